@@ -0,0 +1,153 @@
+package gizmoball.bench;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * Overview: the bridge from the benchmarks to Gizmoball.  The game is written
+ * in the unnamed package, which classes in a package (as JMH requires of
+ * benchmarks) cannot name, so its classes are looked up by name here and
+ * their methods called through MethodHandles.  Every handle is a static final
+ * constant with Object in place of the game's types, so the JIT inlines the
+ * calls as if they were direct.
+ */
+final class App {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    static final Class<?> ENGINE = type("SimulationEngine");
+    static final Class<?> BALL = type("BouncingBall");
+    static final Class<?> GRID = type("CollisionGrid");
+    static final Class<?> STORE = type("FeatureStore");
+    static final Class<?> RUNNER = type("BatchRunner");
+    static final Class<?> WINDOW = type("AnimationWindow");
+    static final Class<?> RECORDING = type("Recording");
+
+    // BatchRunner(File), BatchRunner.newWorld()
+    static final MethodHandle NEW_RUNNER = constructor(RUNNER, File.class);
+    static final MethodHandle NEW_WORLD = virtual(RUNNER, "newWorld", ENGINE);
+
+    // BoardReader.readAll(File, SimulationEngine)
+    static final MethodHandle READ_ALL = erase(find(() -> LOOKUP.findStatic(type("BoardReader"), "readAll",
+            MethodType.methodType(java.util.List.class, File.class, ENGINE))));
+
+    // BinaryBoard.write(File, List), BinaryBoard.read(File, SimulationEngine)
+    static final MethodHandle WRITE_BINARY = erase(find(() -> LOOKUP.findStatic(type("BinaryBoard"), "write",
+            MethodType.methodType(void.class, File.class, java.util.List.class))));
+    static final MethodHandle READ_BINARY = erase(find(() -> LOOKUP.findStatic(type("BinaryBoard"), "read",
+            MethodType.methodType(java.util.List.class, File.class, ENGINE))));
+
+    // SimulationEngine
+    static final MethodHandle NEW_ENGINE = constructor(ENGINE);
+    static final MethodHandle STEP = virtual(ENGINE, "step", void.class, double.class);
+    static final MethodHandle GET_BALL = virtual(ENGINE, "getBall", BALL);
+    static final MethodHandle GET_GRID = virtual(ENGINE, "getCollisionGrid", GRID);
+    static final MethodHandle GET_STORE = virtual(ENGINE, "getFeatureStore", STORE);
+    static final MethodHandle HAS_BALL_IN_PLAY = virtual(ENGINE, "hasBallInPlay", boolean.class);
+
+    // BouncingBall
+    static final MethodHandle DETECT_GRID = virtual(BALL, "detectCollision", type("CollisionInfo"), GRID);
+    static final MethodHandle DETECT_STORE = virtual(BALL, "detectCollision", type("CollisionInfo"), STORE);
+    static final MethodHandle MOVE = virtual(BALL, "move", void.class, double.class);
+    static final MethodHandle SET_POSITION = virtual(BALL, "setPosition", void.class, double.class, double.class);
+    static final MethodHandle SET_VELOCITY = virtual(BALL, "setVelocity", void.class, double.class, double.class);
+
+    // gizmos, by the constructor taking x, y, r, degree, crashMove and the engine.
+    static final MethodHandle NEW_SQUARE = gizmoConstructor("SquareGizmo");
+    static final MethodHandle NEW_LEFT_FLIPPER = gizmoConstructor("LeftFlipper");
+    static final MethodHandle GET_LINES = virtual(type("AbstractGizmo"), "getLines", java.util.List.class);
+
+    // AnimationWindow(List<JButton>), getEngine(), paintComponent(Graphics)
+    static final MethodHandle NEW_WINDOW = constructor(WINDOW, java.util.List.class);
+    static final MethodHandle WINDOW_ENGINE = virtual(WINDOW, "getEngine", ENGINE);
+    static final MethodHandle PAINT = virtual(WINDOW, "paintComponent", void.class, java.awt.Graphics.class);
+
+    // Recording.start(SimulationEngine, double), restore(SimulationEngine)
+    static final MethodHandle START_RECORDING = erase(find(() -> LOOKUP.findStatic(RECORDING, "start",
+            MethodType.methodType(RECORDING, ENGINE, double.class))));
+    static final MethodHandle RESTORE = virtual(RECORDING, "restore", void.class, ENGINE);
+
+    private App() {
+    }
+
+    /**
+     * @return the board file name, looked for in the working directory and then its parent,
+     * so benchmarks run from the project or from the benchmarks module.
+     */
+    static File board(String name) {
+        Path path = Paths.get(name);
+        if (!Files.exists(path)) path = Paths.get("..", name);
+        if (!Files.exists(path)) throw new IllegalArgumentException("board not found: " + name);
+        return path.toFile();
+    }
+
+    /**
+     * @return a new world with the board of file, compiled as for a run.
+     */
+    static Object load(File file) throws Throwable {
+        Object runner = NEW_RUNNER.invokeExact(file);
+        return (Object) NEW_WORLD.invokeExact(runner);
+    }
+
+    /**
+     * @return a new AnimationWindow showing a copy of the board of world.
+     */
+    static Object window(Object world) throws Throwable {
+        Object window = NEW_WINDOW.invokeExact((java.util.List<?>) new ArrayList<>());
+        Object recording = START_RECORDING.invokeExact(world, 40.0);
+        RESTORE.invokeExact(recording, (Object) WINDOW_ENGINE.invokeExact(window));
+        return window;
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> type, Class<?>... parameters) {
+        return erase(find(() -> LOOKUP.findConstructor(type, MethodType.methodType(void.class, parameters))));
+    }
+
+    private static MethodHandle gizmoConstructor(String name) {
+        return constructor(type(name), int.class, int.class, int.class, int.class, boolean.class, ENGINE);
+    }
+
+    private static MethodHandle virtual(Class<?> type, String name, Class<?> result, Class<?>... parameters) {
+        return erase(find(() -> LOOKUP.findVirtual(type, name, MethodType.methodType(result, parameters))));
+    }
+
+    // replaces the game's classes by Object in the type of handle, for invokeExact from here.
+    private static MethodHandle erase(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (isGame(type.parameterType(i))) type = type.changeParameterType(i, Object.class);
+        }
+        if (isGame(type.returnType())) type = type.changeReturnType(Object.class);
+        return handle.asType(type);
+    }
+
+    private static boolean isGame(Class<?> type) {
+        return !type.isPrimitive() && type.getPackage() != null && type.getPackage().getName().isEmpty();
+    }
+
+    private interface Lookup {
+        MethodHandle find() throws ReflectiveOperationException;
+    }
+
+    private static MethodHandle find(Lookup lookup) {
+        try {
+            return lookup.find();
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package gizmoball.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overview: building the geometry of a gizmo, as done for every gizmo placed,
+ * moved or rotated: the segments of a square (makeSquare) and of a flipper
+ * at its rest pose (makeFlipper), at each rotation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class GeometryBenchmark {
+
+    @Param({"0", "90", "180", "270"})
+    public int degree;
+
+    private Object engine;
+
+    @Setup
+    public void create() throws Throwable {
+        engine = (Object) App.NEW_ENGINE.invokeExact();
+    }
+
+    @Benchmark
+    public Object makeSquare() throws Throwable {
+        Object square = (Object) App.NEW_SQUARE.invokeExact(200, 200, 10, degree, false, engine);
+        return (List<?>) App.GET_LINES.invokeExact(square);
+    }
+
+    @Benchmark
+    public Object makeFlipper() throws Throwable {
+        Object flipper = (Object) App.NEW_LEFT_FLIPPER.invokeExact(200, 200, 20, degree, false, engine);
+        return (List<?>) App.GET_LINES.invokeExact(flipper);
+    }
+}
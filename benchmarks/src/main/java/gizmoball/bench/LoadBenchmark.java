@@ -0,0 +1,60 @@
+package gizmoball.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overview: loading a board file: reading it with BoardReader, or a copy of it
+ * in the binary format with BinaryBoard, into the gizmos FileSolver.read()
+ * adds to the window, and into a new, compiled world as BatchRunner does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LoadBenchmark {
+
+    @Param({"presure-test.gizmo", "simple-test.gizmo"})
+    public String board;
+
+    private File file;
+    private File binary;
+
+    @Setup
+    public void find() throws Throwable {
+        file = App.board(board);
+        binary = File.createTempFile("board", ".gzb");
+        binary.deleteOnExit();
+        Object gizmos = (java.util.List<?>) App.READ_ALL.invokeExact(file, (Object) App.NEW_ENGINE.invokeExact());
+        App.WRITE_BINARY.invokeExact(binary, (java.util.List<?>) gizmos);
+    }
+
+    @Benchmark
+    public Object read() throws Throwable {
+        return (java.util.List<?>) App.READ_ALL.invokeExact(file, (Object) App.NEW_ENGINE.invokeExact());
+    }
+
+    @Benchmark
+    public Object readBinary() throws Throwable {
+        return (java.util.List<?>) App.READ_BINARY.invokeExact(binary, (Object) App.NEW_ENGINE.invokeExact());
+    }
+
+    @Benchmark
+    public Object load() throws Throwable {
+        return App.load(file);
+    }
+}
@@ -0,0 +1,71 @@
+package gizmoball.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overview: AnimationWindow.paintComponent() drawing a board offscreen, into
+ * an image the size of the window: the whole frame, and the small region
+ * around the ball that a tick repaints.  Runs headless, so it needs no display.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+
+    // the window is laid out at the size of the board.
+    private static final int SIZE = 400;
+
+    @Param({"presure-test.gizmo", "simple-test.gizmo"})
+    public String board;
+
+    private Object window;
+    private BufferedImage image;
+    private Graphics2D full;
+    private Graphics2D clipped;
+
+    @Setup
+    public void create() throws Throwable {
+        window = App.window(App.load(App.board(board)));
+        ((java.awt.Component) window).setSize(SIZE, SIZE);
+        image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        full = image.createGraphics();
+        clipped = image.createGraphics();
+        clipped.clipRect(SIZE / 2 - 12, SIZE / 2 - 12, 24, 24);
+    }
+
+    @TearDown
+    public void dispose() {
+        full.dispose();
+        clipped.dispose();
+    }
+
+    @Benchmark
+    public Object paintFull() throws Throwable {
+        App.PAINT.invokeExact(window, (java.awt.Graphics) full);
+        return image;
+    }
+
+    @Benchmark
+    public Object paintClipped() throws Throwable {
+        App.PAINT.invokeExact(window, (java.awt.Graphics) clipped);
+        return image;
+    }
+}
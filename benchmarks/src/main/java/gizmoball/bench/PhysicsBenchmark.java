@@ -0,0 +1,84 @@
+package gizmoball.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overview: the per-tick work of the simulation on the boards shipped with
+ * the game: finding the first feature the ball hits, through the collision
+ * grid and through the packed feature store, moving the ball, and whole
+ * ticks of SimulationEngine.step() as AnimationWindow runs them.
+ * The ball starts every invocation of detect and move from the same place,
+ * and every iteration of tick from a freshly loaded board.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PhysicsBenchmark {
+
+    // where the ball starts, and how fast, in pixels and pixels per time unit.
+    private static final double X = 10, Y = 10, VX = 45, VY = 30;
+
+    @Param({"presure-test.gizmo", "simple-test.gizmo"})
+    public String board;
+
+    private Object world;
+    private Object ball;
+    private Object grid;
+    private Object store;
+    private Object start;
+
+    @Setup(Level.Iteration)
+    public void load() throws Throwable {
+        world = App.load(App.board(board));
+        ball = (Object) App.GET_BALL.invokeExact(world);
+        grid = (Object) App.GET_GRID.invokeExact(world);
+        store = (Object) App.GET_STORE.invokeExact(world);
+        App.SET_POSITION.invokeExact(ball, X, Y);
+        App.SET_VELOCITY.invokeExact(ball, VX, VY);
+        start = (Object) App.START_RECORDING.invokeExact(world, 40.0);
+    }
+
+    @Benchmark
+    public Object detectCollisionGrid() throws Throwable {
+        return (Object) App.DETECT_GRID.invokeExact(ball, grid);
+    }
+
+    @Benchmark
+    public Object detectCollisionPacked() throws Throwable {
+        return (Object) App.DETECT_STORE.invokeExact(ball, store);
+    }
+
+    @Benchmark
+    public Object move() throws Throwable {
+        App.SET_POSITION.invokeExact(ball, X, Y);
+        App.SET_VELOCITY.invokeExact(ball, VX, VY);
+        App.MOVE.invokeExact(ball, 40.0);
+        return ball;
+    }
+
+    @Benchmark
+    public Object tick() throws Throwable {
+        App.STEP.invokeExact(world, 40.0);
+        // a ball caught by an absorber leaves nothing to simulate; replay the board.
+        if (!(boolean) App.HAS_BALL_IN_PLAY.invokeExact(world)) {
+            App.RESTORE.invokeExact(start, world);
+        }
+        return world;
+    }
+}
@@ -7,14 +7,18 @@ import java.awt.geom.Line2D;
 
 public class AbsorberGizmo extends AbstractGizmo {
 
-    public AbsorberGizmo(AnimationWindow animationWindow) {
-        super(animationWindow);
-        makeSquare();
+    public AbsorberGizmo(SimulationEngine engine) {
+        super(engine);
+    }
+    public AbsorberGizmo(int x, int y, int r, int degree, boolean crashMove, SimulationEngine engine) {
+        super(x,y,r,degree,crashMove,engine);
     }
-    public AbsorberGizmo(int x, int y, int r, int degree, boolean crashMove, AnimationWindow animationWindow) {
-        super(x,y,r,degree,crashMove,animationWindow);
+
+    @Override
+    protected void makeGeometry() {
         makeSquare();
     }
+
     public void makeSquare(){
         lines.clear();
         corners.clear();
@@ -38,10 +42,9 @@ public class AbsorberGizmo extends AbstractGizmo {
     @Override
     public void paint(Graphics g) {
 
-        Rectangle clipRect = g.getClipBounds();
         Graphics2D g2d=(Graphics2D)g;
         g2d.setColor(Color.RED);
-        makeSquare();
+        validateGeometry();
         for(LineSegment lineSegment:lines){
             Line2D.Double d=lineSegment.toLine2D();
             g2d.draw(d);
@@ -30,54 +30,99 @@ public abstract class AbstractGizmo {
     protected boolean crashMove = false;
     private int oldDegree;
     protected int degree;
+    // incremented by geometryChanged(), so cached impact times against this gizmo can be checked for staleness.
+    private int geometryVersion;
+    // true while lines and corners do not match x, y, r and degree.
+    private boolean geometryDirty = true;
 
-    protected AnimationWindow animationWindow;
+    protected SimulationEngine engine;
     protected List<LineSegment> lines;
     protected List<Circle> corners;
     protected Color color;
 
-    public AbstractGizmo(AnimationWindow animationWindow) {
+    public AbstractGizmo(SimulationEngine engine) {
         this.isTrack = false;
         this.crashMove = false;
         this.degree = 0;
-        this.animationWindow = animationWindow;
-        this.r = animationWindow.getSizePerUnit() / 2;
+        this.engine = engine;
+        this.r = SimulationEngine.getSizePerUnit() / 2;
         this.oldDegree = -1;
         this.lines = new ArrayList<>();
         this.corners = new ArrayList<>();
-        this.isTrack = animationWindow.isTrackMode();
+        this.isTrack = engine.isTrackMode();
         // random position, but no intersect with others.
-        Rectangle th;
-        while (true) {
-            Random random = new Random();
-            int x = (random.nextInt(animationWindow.getWindowUnitHeight()) + 1) * animationWindow.getSizePerUnit() - animationWindow.getSizePerUnit() / 2;
-            int y = (random.nextInt(animationWindow.getWindowUnitWidth()) + 1) * animationWindow.getSizePerUnit() - animationWindow.getSizePerUnit() / 2;
-
-            // 与其它有交集，删除
-            th = new Rectangle(x - r, y - r, r + r, r + r);
-            if (!animationWindow.hasCoincidenceWithOthers(th)) break;
-
-        }
-        this.x = (int) (th.getX() + (th.getWidth() / 2));
-        this.y = (int) (th.getY() + (th.getHeight() / 2));
+        Point cell = engine.randomFreeCell();
+        if (cell == null) throw new IllegalStateException("no free cell on the board");
+        this.x = cell.x;
+        this.y = cell.y;
     }
 
-    public AbstractGizmo(int x, int y, int r, int degree, boolean crashMove, AnimationWindow animationWindow) {
+    public AbstractGizmo(int x, int y, int r, int degree, boolean crashMove, SimulationEngine engine) {
         this.x = x;
         this.y = y;
         this.isTrack = false;
         this.crashMove = crashMove;
         this.degree = degree;
-        this.animationWindow = animationWindow;
+        this.engine = engine;
         this.r = r;
         this.oldDegree = -1;
         this.lines = new ArrayList<>();
         this.corners = new ArrayList<>();
-        this.isTrack = animationWindow.isTrackMode();
     }
 
     public abstract void paint(Graphics g);
 
+    /**
+     * @modifies this
+     * @effects rebuilds lines and corners from x, y, r and degree.
+     */
+    protected abstract void makeGeometry();
+
+    /**
+     * Must be called after x, y, r or degree changed.  The geometry is only
+     * marked stale and rebuilt on its next use, then shared by painting and
+     * the collision index of the world until the next change.
+     */
+    protected void geometryChanged() {
+        geometryDirty = true;
+        geometryVersion++;
+        engine.gizmoChanged(this);
+    }
+
+    /**
+     * Must be called instead of geometryChanged() after a change of the
+     * geometry that leaves the bounding boxes where they were.
+     */
+    protected void poseChanged() {
+        geometryDirty = true;
+        geometryVersion++;
+        engine.gizmoPoseChanged(this);
+    }
+
+    /**
+     * @modifies this
+     * @effects rebuilds lines and corners if they are stale.
+     */
+    protected void validateGeometry() {
+        if (!geometryDirty) return;
+        geometryDirty = false;
+        makeGeometry();
+    }
+
+    public List<LineSegment> getLines() {
+        validateGeometry();
+        return lines;
+    }
+
+    public List<Circle> getCorners() {
+        validateGeometry();
+        return corners;
+    }
+
+    public int getGeometryVersion() {
+        return geometryVersion;
+    }
+
     public Rectangle[] boundingBoxes() {
         return new Rectangle[]{new Rectangle(x - r, y - r, 2 * r, 2 * r)};
     }
@@ -86,48 +131,78 @@ public abstract class AbstractGizmo {
         this.isTrack = isTrack;
     }
 
+    /**
+     * Gizmos created from a board, by the constructor taking x, y, r, degree
+     * and crashMove, are created as non-trackers without reading the mode of
+     * the engine, so boards can be built off the event dispatch thread.
+     *
+     * @modifies this
+     * @effects makes this a tracker or not, colored as a gizmo created in that mode is.
+     */
+    void initTracker(boolean isTrack) {
+        setIsTrack(isTrack);
+        if (isTrack && color != null) color = Color.BLACK;
+    }
+
     public void rotate(int degree) {
         oldDegree = this.degree;
         this.degree += degree;
+        geometryChanged();
 
     }
 
     public void makeLarger() {
-        r += animationWindow.getSizePerUnit();
-        if (x > animationWindow.getWidth() - r || x < r
-                || y > animationWindow.getHeight() - r || y < r) {
-            r -= animationWindow.getSizePerUnit();
+        r += SimulationEngine.getSizePerUnit();
+        if (x > engine.getWidth() - r || x < r
+                || y > engine.getHeight() - r || y < r) {
+            r -= SimulationEngine.getSizePerUnit();
         }
+        geometryChanged();
     }
 
     /**
      * @return true if it can make small, (When r<1, it cannot small!)
      */
     public boolean makeSmaller() {
-        if (r - animationWindow.getSizePerUnit() <= 0) return false;
-        r -= animationWindow.getSizePerUnit();
+        if (r - SimulationEngine.getSizePerUnit() <= 0) return false;
+        r -= SimulationEngine.getSizePerUnit();
+        geometryChanged();
         return true;
     }
 
     public void crashMovable(boolean c) {
+        if (crashMove == c) return;
         crashMove = c;
+        engine.staticChanged(this);
     }
 
     public void buildMove(int x, int y) {
-        this.x = x / AnimationWindow.getSizePerUnit() * AnimationWindow.getSizePerUnit() + AnimationWindow.getSizePerUnit() / 2;
-        if (x >= animationWindow.getWidth() - r) {
-            this.x = animationWindow.getWidth() - r;
+        this.x = x / SimulationEngine.getSizePerUnit() * SimulationEngine.getSizePerUnit() + SimulationEngine.getSizePerUnit() / 2;
+        if (x >= engine.getWidth() - r) {
+            this.x = engine.getWidth() - r;
         }
         if (x <= r) {
             this.x = r;
         }
-        this.y = y / AnimationWindow.getSizePerUnit() * AnimationWindow.getSizePerUnit() + AnimationWindow.getSizePerUnit() / 2;
-        if (y >= animationWindow.getHeight() - r) {
-            this.y = animationWindow.getHeight() - r;
+        this.y = y / SimulationEngine.getSizePerUnit() * SimulationEngine.getSizePerUnit() + SimulationEngine.getSizePerUnit() / 2;
+        if (y >= engine.getHeight() - r) {
+            this.y = engine.getHeight() - r;
         }
         if (y <= r) {
             this.y = r;
         }
+        geometryChanged();
+    }
+
+    /**
+     * @modifies this
+     * @effects puts the center of the gizmo at (x, y) as it is, unlike buildMove().
+     */
+    public void setPosition(int x, int y) {
+        if (this.x == x && this.y == y) return;
+        this.x = x;
+        this.y = y;
+        geometryChanged();
     }
 
     @Override
@@ -0,0 +1,126 @@
+import java.awt.*;
+import java.awt.image.VolatileImage;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Overview: an ActiveRenderer drives an AnimationWindow in running mode from
+ * its own thread instead of a Swing Timer: every frame it advances the
+ * simulation, paints the whole window into a VolatileImage back buffer and
+ * copies it to the screen itself, without going through repaint().  Frames are
+ * paced to a target rate, or run as fast as they can be rendered when the
+ * target is 0, and counted, so the true rendering throughput can be measured
+ * and fast displays are fed every refresh.
+ */
+public class ActiveRenderer implements Runnable {
+
+    private final AnimationWindow window;
+    // frames per second aimed at, 0 for as many as possible.
+    private final int targetFps;
+
+    private volatile boolean running;
+    private Thread thread;
+    private VolatileImage back;
+
+    private long frames;
+    private long startNanos;
+    // when stop() was called, or 0 while rendering.
+    private long stopNanos;
+
+    /**
+     * @param targetFps frames per second to render, or 0 for uncapped
+     */
+    public ActiveRenderer(AnimationWindow window, int targetFps) {
+        if (targetFps < 0) throw new IllegalArgumentException("target frame rate must not be negative");
+        this.window = window;
+        this.targetFps = targetFps;
+    }
+
+    /**
+     * @modifies this
+     * @effects starts rendering frames on a new thread.
+     */
+    public void start() {
+        if (running) return;
+        running = true;
+        frames = 0;
+        startNanos = System.nanoTime();
+        stopNanos = 0;
+        thread = new Thread(this, "gizmoball-render");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @modifies this
+     * @effects stops rendering and waits for the frame being rendered, if any.
+     * Must not be called from the rendering thread.
+     */
+    public void stop() {
+        if (!running) return;
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+        stopNanos = System.nanoTime();
+    }
+
+    /**
+     * @return the average frame rate since the last start(), up to stop() if it was stopped since.
+     */
+    public double getFramesPerSecond() {
+        double elapsed = ((stopNanos != 0 ? stopNanos : System.nanoTime()) - startNanos) / 1e9;
+        return elapsed > 0 ? frames / elapsed : 0;
+    }
+
+    @Override
+    public void run() {
+        long frameNanos = targetFps == 0 ? 0 : 1000000000L / targetFps;
+        long next = System.nanoTime();
+        while (running) {
+            window.advanceFrame();
+            if (render()) frames++;
+            if (frameNanos == 0) {
+                Thread.yield();
+                continue;
+            }
+            next += frameNanos;
+            long wait = next - System.nanoTime();
+            // when a frame is late, the next ones are paced from now rather than rushed.
+            if (wait <= 0) next = System.nanoTime();
+            else LockSupport.parkNanos(wait);
+        }
+    }
+
+    /**
+     * Paints the window into the back buffer and copies it to the screen,
+     * again if the contents of the buffer were lost meanwhile.
+     * @return false if the window is not on a screen and nothing was rendered.
+     */
+    private boolean render() {
+        GraphicsConfiguration configuration = window.getGraphicsConfiguration();
+        int width = window.getWidth(), height = window.getHeight();
+        if (configuration == null || width <= 0 || height <= 0) return false;
+        do {
+            if (back == null || back.getWidth() != width || back.getHeight() != height
+                    || back.validate(configuration) == VolatileImage.IMAGE_INCOMPATIBLE) {
+                if (back != null) back.flush();
+                back = configuration.createCompatibleVolatileImage(width, height);
+            }
+            Graphics2D g = back.createGraphics();
+            g.setColor(window.getBackground());
+            g.fillRect(0, 0, width, height);
+            g.setColor(window.getForeground());
+            window.paintComponent(g);
+            g.dispose();
+            Graphics screen = window.getGraphics();
+            if (screen == null) return false;
+            screen.drawImage(back, 0, 0, null);
+            screen.dispose();
+        } while (back.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+        return true;
+    }
+}
@@ -1,15 +1,19 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Overview: an AnimationWindow is an area on the screen in which a
  * bouncing ball animation occurs.  AnimationWindows have two modes:
  * on and off.  During the on mode the ball moves, during the off
- * mode the ball doesn't move.
+ * mode the ball doesn't move.  The world itself lives in a
+ * SimulationEngine; this window only edits and renders it.
  */
 
 public class AnimationWindow extends JComponent {
@@ -19,26 +23,63 @@ public class AnimationWindow extends JComponent {
     // Controls how often we redraw
     private static int FRAMES_PER_SECOND = 25;
 
-    private static int SIZE_PER_UNIT = 20;
-    private static int WINDOW_UNIT_HEIGHT = 20;
-    private static int WINDOW_UNIT_WIDTH = 20;
+    private static int SIZE_PER_UNIT = SimulationEngine.getSizePerUnit();
+    private static int WINDOW_UNIT_HEIGHT = SimulationEngine.getWindowUnitHeight();
+    private static int WINDOW_UNIT_WIDTH = SimulationEngine.getWindowUnitWidth();
+
+    // most simulation ticks run for one frame before the window gives up catching up.
+    private static final int MAX_TICKS_PER_FRAME = 5;
+    // length of a simulation tick in milliseconds, one frame by default.
+    private static final double TICK_MILLIS = SimulationEngine.getTickMillis();
+    // simulation ticks in a second of the run, at least one.
+    private static final int TICKS_PER_SECOND = (int) Math.max(1, Math.round(1000 / TICK_MILLIS));
 
     private RunningModeEventListener runningEventListener;
     private BuildingModeEventListener buildingEventListener;
-    private BouncingBall ball;
+    private SimulationEngine engine;
 
-    private List<AbstractGizmo> gizmoList;
-    private List<Flipper> flipperList;
     private AbstractGizmo clickedGizmo;
 
     private Timer runningTimer;
+    // renders running mode on its own thread instead of the timer, or null.
+    private ActiveRenderer renderer;
+    // held while the world is stepped, painted or changed in running mode, as
+    // the renderer does it off the event dispatch thread.
+    private final Object frameLock = new Object();
+    // set when the renderer asked the event dispatch thread to stop running mode.
+    private boolean stopping;
+    // turns the time between frames into ticks of the simulation.
+    private FixedStepLoop loop = new FixedStepLoop(TICK_MILLIS, MAX_TICKS_PER_FRAME);
     private boolean mode;
+    // where every ball was before the last tick, and where it is drawn: between
+    // there and where it is, as far as the clock is past the last tick.
+    private double[] fromX = new double[0], fromY = new double[0];
+    private double[] drawX = new double[0], drawY = new double[0];
+    // bounding boxes of the balls as drawn in the previous frame, reused between frames.
+    private Rectangle[] oldBoxes = new Rectangle[0];
+    private final Rectangle newBox = new Rectangle();
+    private final Rectangle repaintArea = new Rectangle();
+    // the grid, the walls and the static gizmos, drawn once at the scale of the
+    // screen, and the static version of the engine it shows.
+    private BufferedImage background;
+    private int backgroundVersion = -1;
+    // images of the gizmos as they are drawn, by class, size, rotation and color.
+    private final SpriteCache sprites = new SpriteCache(Integer.getInteger("gizmoball.sprites", 256));
+    // the area being painted, and the gizmos in it, reused between paints.
+    private final Rectangle clip = new Rectangle();
+    private final List<AbstractGizmo> visible = new ArrayList<>();
     private List<JButton> optionButton;
 
-    private boolean trackMode;
+    // true while runs are recorded; recording is the run being or last recorded.
+    private boolean recordingOn;
+    private Recording recording;
+    // the recorded run being replayed instead of taking input, or null.
+    private Recording.Replay replay;
+    // the geometry backend of running mode, which a replay switches to that of its run until it ends.
+    private SimulationEngine.GeometryBackend geometry;
 
     public boolean isTrackMode() {
-        return trackMode;
+        return engine.isTrackMode();
     }
 
     /**
@@ -46,7 +87,32 @@ public class AnimationWindow extends JComponent {
      */
     public AnimationWindow(List<JButton> optionButton) {
         super();
-        ball = new BouncingBall(this);
+        engine = new SimulationEngine();
+        engine.setEventDriven(Boolean.getBoolean("gizmoball.eventDriven"));
+        engine.setPackedFeatures(Boolean.getBoolean("gizmoball.packedFeatures"));
+        // "stock" (the default), "fast" for FastGeometry, or "compare" to check it
+        // against the stock GeometryImpl; see SimulationEngine.useGeometry().
+        geometry = SimulationEngine.GeometryBackend.valueOf(
+                System.getProperty("gizmoball.geometry", "stock").toUpperCase(Locale.ROOT));
+        if (geometry != SimulationEngine.GeometryBackend.STOCK)
+            engine.useGeometry(geometry);
+        // seconds of the run kept for rewinding with the left arrow key, 0 for none.
+        int history = Integer.getInteger("gizmoball.history", 10);
+        if (history > 0)
+            engine.setHistory(new WorldHistory(history * TICKS_PER_SECOND));
+        // time the frames into a TickMetrics MBean, for JConsole and other JMX clients.
+        if (Boolean.parseBoolean(System.getProperty("gizmoball.metrics", "true"))) {
+            TickMetrics metrics = new TickMetrics();
+            engine.setMetrics(metrics);
+            metrics.register();
+        }
+        // seed of the positions of new gizmos, for reproducible boards.
+        Long seed = Long.getLong("gizmoball.seed");
+        if (seed != null)
+            engine.setPlacementSeed(seed);
+        // render running mode actively, at gizmoball.fps frames per second (0 for uncapped).
+        if (Boolean.getBoolean("gizmoball.activeRendering"))
+            renderer = new ActiveRenderer(this, Integer.getInteger("gizmoball.fps", 60));
         // this only initializes the timer, we actually start and stop the timer in the setMode() method
         runningEventListener = new RunningModeEventListener();
         buildingEventListener = new BuildingModeEventListener();
@@ -54,10 +120,7 @@ public class AnimationWindow extends JComponent {
         runningTimer = new Timer(1000 / FRAMES_PER_SECOND, runningEventListener);
         mode = true;
         setMode(false);
-        gizmoList = new ArrayList<>();
-        flipperList = new ArrayList<>();
         this.optionButton = optionButton;
-        this.trackMode = false;
     }
 
 
@@ -70,6 +133,57 @@ public class AnimationWindow extends JComponent {
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
 
+        synchronized (frameLock) {
+            long start = System.nanoTime();
+            // the static part of the board is blitted from the background layer,
+            // only the balls, flippers and crash-move gizmos are drawn each frame.
+            AffineTransform transform = ((Graphics2D) g).getTransform();
+            validateBackground(transform.getScaleX(), transform.getScaleY());
+            g.drawImage(background, 0, 0, engine.getWidth() + 1, engine.getHeight() + 1, null);
+
+            List<BouncingBall> balls = engine.getBalls();
+            for (int i = 0; i < balls.size(); i++) {
+                if (mode && i < drawX.length) balls.get(i).paint(g, drawX[i], drawY[i]);
+                else balls.get(i).paint(g);
+            }
+            // only the gizmos in the area being painted, widened by the strokes along their edges.
+            if (g.getClip() == null) clip.setBounds(0, 0, getWidth(), getHeight());
+            else g.getClipBounds(clip);
+            clip.grow(2, 2);
+            visible.clear();
+            engine.getOccupancyGrid().query(clip, visible);
+            g.setColor(getForeground());
+            for (AbstractGizmo abstractGizmo : visible) {
+                if (!StaticGeometry.isStatic(abstractGizmo))
+                    sprites.paint(abstractGizmo, (Graphics2D) g, transform.getScaleX());
+            }
+            TickMetrics metrics = engine.getMetrics();
+            if (metrics != null) metrics.record(TickMetrics.Phase.PAINT, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @modifies this
+     * @effects redraws the background layer if the static gizmos changed since
+     * it was drawn, or it was drawn at another scale.
+     */
+    private void validateBackground(double scaleX, double scaleY) {
+        int width = (int) Math.ceil((engine.getWidth() + 1) * scaleX);
+        int height = (int) Math.ceil((engine.getHeight() + 1) * scaleY);
+        if (background != null && backgroundVersion == engine.getStaticVersion()
+                && background.getWidth() == width && background.getHeight() == height) return;
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+        if (background == null || background.getWidth() != width || background.getHeight() != height) {
+            background = configuration == null ? new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB)
+                    : configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        }
+        Graphics2D g = background.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, width, height);
+        g.setComposite(AlphaComposite.SrcOver);
+        g.scale(scaleX, scaleY);
+        g.setColor(getForeground());
+
         for (int i = 1; i < WINDOW_UNIT_HEIGHT; i++) {
             g.drawLine(0, i * SIZE_PER_UNIT, SIZE_PER_UNIT * WINDOW_UNIT_WIDTH, i * SIZE_PER_UNIT);
         }
@@ -83,10 +197,11 @@ public class AnimationWindow extends JComponent {
         g.drawRect(SIZE_PER_UNIT * WINDOW_UNIT_WIDTH - 1, 0, 1, SIZE_PER_UNIT * WINDOW_UNIT_HEIGHT);
         g.drawRect(0, SIZE_PER_UNIT * WINDOW_UNIT_HEIGHT - 1, SIZE_PER_UNIT * WINDOW_UNIT_HEIGHT, 1);
 
-        ball.paint(g);
-        for (AbstractGizmo abstractGizmo : gizmoList) {
-            abstractGizmo.paint(g);
+        for (AbstractGizmo abstractGizmo : engine.getGizmoList()) {
+            if (StaticGeometry.isStatic(abstractGizmo)) sprites.paint(abstractGizmo, g, scaleX);
         }
+        g.dispose();
+        backgroundVersion = engine.getStaticVersion();
     }
 
     /**
@@ -94,28 +209,130 @@ public class AnimationWindow extends JComponent {
      * need to move and repaint the ball.
      *
      * @modifies both the ball and the window that this listener owns
-     * @effects causes the ball to move and the window to be updated
-     * to show the new position of the ball.
+     * @effects runs as many ticks as the clock advanced since the last frame
+     * and updates the window to show the balls where they are at this time.
      */
     private void runningModeRepaint() {
-        Rectangle oldPos = ball.boundingBox();
-        ball.move(runningTimer.getDelay());
-        CollisionInfo collisionInfo;
-        if ((collisionInfo = ball.detectCollision(gizmoList)) != null) {
-            if (collisionInfo.getGizmo().getClass() == AbsorberGizmo.class)
-                ball.remove();
-            else if (collisionInfo.getGizmo().isTracker() == true)
-                ball.inTrack();
-            else
-                ball.dealCollision(collisionInfo);
+        synchronized (frameLock) {
+            if (!advanceBalls()) return;
+            long start = System.nanoTime();
+            List<BouncingBall> balls = engine.getBalls();
+            if (engine.consumeBoardChanged()) {
+                repaint();
+                return;
+            }
+            // only the balls that moved need repainting, where they were and where they are.
+            boolean dirty = false;
+            for (int i = 0; i < balls.size(); i++) {
+                balls.get(i).boundingBox(drawX[i], drawY[i], newBox);
+                if (newBox.equals(oldBoxes[i])) continue;
+                if (!dirty) repaintArea.setBounds(oldBoxes[i]);
+                else repaintArea.add(oldBoxes[i]);
+                repaintArea.add(newBox);
+                dirty = true;
+            }
+            if (dirty)
+                repaint(repaintArea.x, repaintArea.y, repaintArea.width, repaintArea.height);
+            TickMetrics metrics = engine.getMetrics();
+            if (metrics != null) metrics.record(TickMetrics.Phase.REPAINT_REGION, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Runs the ticks due for a frame of the ActiveRenderer, which paints the
+     * whole window itself.
+     */
+    void advanceFrame() {
+        synchronized (frameLock) {
+            if (advanceBalls()) engine.consumeBoardChanged();
+        }
+    }
+
+    /**
+     * @modifies the world and this
+     * @effects runs as many ticks as the clock advanced since the last frame
+     * and sets where the balls are drawn at this time.
+     * @return false if running mode was stopped and nothing is to be drawn.
+     */
+    private boolean advanceBalls() {
+        if (stopping) return false;
+        List<BouncingBall> balls = engine.getBalls();
+        if (oldBoxes.length != balls.size()) {
+            oldBoxes = new Rectangle[balls.size()];
+            for (int i = 0; i < oldBoxes.length; i++) oldBoxes[i] = new Rectangle();
+            fromX = new double[balls.size()];
+            fromY = new double[balls.size()];
+            drawX = new double[balls.size()];
+            drawY = new double[balls.size()];
+            holdBalls();
+        }
+        for (int i = 0; i < balls.size(); i++) {
+            balls.get(i).boundingBox(drawX[i], drawY[i], oldBoxes[i]);
+        }
+        int ticks = loop.advance(System.nanoTime());
+        for (int t = 0; t < ticks; t++) {
+            for (int i = 0; i < balls.size(); i++) {
+                fromX[i] = balls.get(i).getX();
+                fromY[i] = balls.get(i).getY();
+            }
+            SimulationEvents.Tick event = SimulationEvents.isRecording() ? new SimulationEvents.Tick() : null;
+            if (event != null) event.begin();
+            if (replay == null) {
+                engine.step(loop.getTickMillis());
+            } else if (!replay.step()) {
+                stopRunning();
+                return false;
+            }
+            if (event != null) event.end();
+            if (event != null && event.shouldCommit()) {
+                for (int i = 0; i < balls.size(); i++) {
+                    if (!balls.get(i).isInPlay()) continue;
+                    event.balls++;
+                    event.featuresTested += balls.get(i).getFeaturesTested();
+                }
+                event.commit();
+            }
+        }
+        if (!engine.hasBallInPlay())
+            stopRunning();
+        double alpha = loop.getAlpha();
+        for (int i = 0; i < balls.size(); i++) {
+            BouncingBall ball = balls.get(i);
+            // a ball that just left the game is not drawn on its way out.
+            boolean jumped = !ball.isInPlay();
+            drawX[i] = jumped ? ball.getX() : fromX[i] + (ball.getX() - fromX[i]) * alpha;
+            drawY[i] = jumped ? ball.getY() : fromY[i] + (ball.getY() - fromY[i]) * alpha;
+        }
+        return true;
+    }
+
+    /**
+     * Leaves running mode, from the event dispatch thread.
+     */
+    private void stopRunning() {
+        if (SwingUtilities.isEventDispatchThread()) {
+            setMode(false);
+        } else if (!stopping) {
+            stopping = true;
+            SwingUtilities.invokeLater(() -> setMode(false));
+        }
+    }
+
+    /**
+     * Draws every ball where it is, with nothing to interpolate from, after it
+     * was put somewhere else than by a tick.
+     */
+    private void holdBalls() {
+        List<BouncingBall> balls = engine.getBalls();
+        for (int i = 0; i < drawX.length && i < balls.size(); i++) {
+            fromX[i] = drawX[i] = balls.get(i).getX();
+            fromY[i] = drawY[i] = balls.get(i).getY();
         }
-        Rectangle repaintArea = oldPos.union(ball.boundingBox());
-        repaint(repaintArea.x, repaintArea.y, repaintArea.width, repaintArea.height);
     }
 
     public Rectangle acquireOldBoundingBox() {
         Rectangle repaintArea = new Rectangle();
-        for (AbstractGizmo abstractGizmo : gizmoList) {
+        for (AbstractGizmo abstractGizmo : engine.getGizmoList()) {
             for (Rectangle rectangle : abstractGizmo.boundingBoxes())
                 repaintArea = repaintArea.union(rectangle);
         }
@@ -124,7 +341,7 @@ public class AnimationWindow extends JComponent {
 
     public void buildingModeRepaint(Rectangle rectangle) {
         Rectangle repaintArea = rectangle;
-        for (AbstractGizmo abstractGizmo : gizmoList) {
+        for (AbstractGizmo abstractGizmo : engine.getGizmoList()) {
             for (Rectangle rectangle2 : abstractGizmo.boundingBoxes())
                 repaintArea = repaintArea.union(rectangle2);
         }
@@ -148,7 +365,14 @@ public class AnimationWindow extends JComponent {
             addMouseMotionListener(buildingEventListener);
             requestFocus(); // make sure keyboard is directed to us
             mode = false;
-            runningTimer.stop();
+            if (renderer != null) renderer.stop();
+            else runningTimer.stop();
+            if (recording != null && replay == null) recording.finish(engine.getTickCount());
+            if (replay != null) {
+                loop = new FixedStepLoop(TICK_MILLIS, MAX_TICKS_PER_FRAME);
+                if (SimulationEngine.getGeometryBackend() != geometry) engine.useGeometry(geometry);
+            }
+            replay = null;
         } else { // from animation off to on
             addMouseListener(runningEventListener);
             addMouseMotionListener(runningEventListener);
@@ -156,24 +380,34 @@ public class AnimationWindow extends JComponent {
             removeMouseListener(buildingEventListener);
             removeMouseMotionListener(buildingEventListener);
             requestFocus(); // make sure keyboard is directed to us
+            for (BouncingBall ball : engine.getBalls()) {
+                ball.release();
+            }
+            engine.compileBoard();
+            if (engine.getHistory() != null) engine.getHistory().clear();
+            if (recordingOn && replay == null) recording = Recording.start(engine, loop.getTickMillis());
+            loop.reset();
+            holdBalls();
             mode = true;
-            runningTimer.start();
+            stopping = false;
+            if (renderer != null) renderer.start();
+            else runningTimer.start();
         }
     }
 
     public void addGizmo(Class t) {
         if (t.getSuperclass() != AbstractGizmo.class && t.getSuperclass().getSuperclass() != AbstractGizmo.class)
             throw new IllegalArgumentException("not subclass of AbstractGizmo");
-        System.out.println(summarizeGizmoSize());
-        if (summarizeGizmoSize() == WINDOW_UNIT_HEIGHT * WINDOW_UNIT_WIDTH) {
+        System.out.println(engine.summarizeGizmoSize());
+        if (engine.summarizeGizmoSize() == WINDOW_UNIT_HEIGHT * WINDOW_UNIT_WIDTH) {
             JOptionPane.showMessageDialog(this, "cannot add, now is crowded with gizmos");
             return;
         }
         Rectangle rectangle = acquireOldBoundingBox();
         try {
-            Constructor c = t.getDeclaredConstructor(new Class[]{AnimationWindow.class});
-            AbstractGizmo abstractGizmo = (AbstractGizmo) c.newInstance(new Object[]{this});
-            gizmoList.add(abstractGizmo);
+            Constructor c = t.getDeclaredConstructor(new Class[]{SimulationEngine.class});
+            AbstractGizmo abstractGizmo = (AbstractGizmo) c.newInstance(new Object[]{engine});
+            engine.addGizmo(abstractGizmo);
             buildingModeRepaint(rectangle);
             clickedGizmo = abstractGizmo;
 
@@ -181,9 +415,6 @@ public class AnimationWindow extends JComponent {
                 clickedGizmo.setIsTrack(true);
             else
                 clickedGizmo.setIsTrack(false);
-
-            if (t == LeftFlipper.class || t == RightFlipper.class)
-                flipperList.add((Flipper) abstractGizmo);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -197,29 +428,37 @@ public class AnimationWindow extends JComponent {
         }
         Rectangle rectangle = acquireOldBoundingBox();
         try {
-            //int x, int y, int r, int degree, boolean crashMove,  AnimationWindow animationWindow
-            Constructor c = t.getDeclaredConstructor(new Class[]{int.class, int.class, int.class, int.class, boolean.class, AnimationWindow.class});
-            AbstractGizmo abstractGizmo = (AbstractGizmo) c.newInstance(new Object[]{x, y, r, degree, crashMove, this});
-            gizmoList.add(abstractGizmo);
+            //int x, int y, int r, int degree, boolean crashMove,  SimulationEngine engine
+            Constructor c = t.getDeclaredConstructor(new Class[]{int.class, int.class, int.class, int.class, boolean.class, SimulationEngine.class});
+            AbstractGizmo abstractGizmo = (AbstractGizmo) c.newInstance(new Object[]{x, y, r, degree, crashMove, engine});
+            abstractGizmo.initTracker(isTrackMode());
+            engine.addGizmo(abstractGizmo);
             buildingModeRepaint(rectangle);
             clickedGizmo = abstractGizmo;
-
-            if (isTrackMode() == true)
-                clickedGizmo.setIsTrack(true);
-            else
-                clickedGizmo.setIsTrack(false);
-
-            if (t == LeftFlipper.class || t == RightFlipper.class)
-                flipperList.add((Flipper) abstractGizmo);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * @modifies this
+     * @effects adds gizmos, made for the engine of this window, to the board
+     * at once, as trackers if the window is in track mode, and repaints the
+     * window once.
+     */
+    public void addGizmos(List<? extends AbstractGizmo> gizmos) {
+        boolean trackMode = isTrackMode();
+        for (AbstractGizmo gizmo : gizmos) {
+            gizmo.initTracker(trackMode);
+        }
+        engine.addGizmos(gizmos);
+        if (!gizmos.isEmpty()) clickedGizmo = gizmos.get(gizmos.size() - 1);
+        repaint();
+    }
 
     public void delete() {
         Rectangle rectangle = acquireOldBoundingBox();
-        gizmoList.remove(clickedGizmo);
+        engine.removeGizmo(clickedGizmo);
         clickedGizmo = null;
         for (JButton b : optionButton) {
             b.setEnabled(false);
@@ -235,7 +474,7 @@ public class AnimationWindow extends JComponent {
     public void makeLarger() {
         Rectangle rectangle = acquireOldBoundingBox();
         clickedGizmo.makeLarger();
-        if (hasCoincidenceWithOthers(clickedGizmo)) {
+        if (engine.hasCoincidenceWithOthers(clickedGizmo)) {
             clickedGizmo.makeSmaller();
             JOptionPane.showMessageDialog(this, "has coincide with other object, so cannot make larger.");
         }
@@ -264,70 +503,71 @@ public class AnimationWindow extends JComponent {
     }
 
     public static int getSizePerUnit() {
-        return SIZE_PER_UNIT;
+        return SimulationEngine.getSizePerUnit();
     }
 
     public static int getWindowUnitHeight() {
-        return WINDOW_UNIT_HEIGHT;
+        return SimulationEngine.getWindowUnitHeight();
     }
 
     public static int getWindowUnitWidth() {
-        return WINDOW_UNIT_WIDTH;
+        return SimulationEngine.getWindowUnitWidth();
     }
 
-    public boolean hasCoincidenceWithOthers(Rectangle th) {
-        boolean has = false;
-        for (AbstractGizmo a : gizmoList) {
-            for (Rectangle rect : a.boundingBoxes()) {
-                Rectangle intersectSet = rect.intersection(th);
-                if (intersectSet.getWidth() > 0 && intersectSet.getHeight() > 0) {
-                    return true;
-                }
-            }
-        }
-        return false;
+    @Override
+    public void removeAll() {
+        super.removeAll();
+        engine.clear();
     }
 
-    public int summarizeGizmoSize() {
-        int sizeContain = 0;
-        for (AbstractGizmo a : gizmoList) {
-            Rectangle[] rects = a.boundingBoxes();
-            for (Rectangle rect : rects) {
-                sizeContain += (rect.getHeight() / SIZE_PER_UNIT) * (rect.getWidth() / SIZE_PER_UNIT);
-            }
-        }
-
-        return sizeContain;
+    public List<AbstractGizmo> getGizmoList() {
+        return engine.getGizmoList();
     }
 
-    public boolean hasCoincidenceWithOthers(AbstractGizmo gizmo) {
-        for (AbstractGizmo a : gizmoList) {
-            if (a == gizmo) continue;
-            for (Rectangle arect : a.boundingBoxes()) {
-                for (Rectangle rectangle : gizmo.boundingBoxes()) {
-                    Rectangle intersectSet = arect.intersection(rectangle);
-                    if (intersectSet.getWidth() > 1 && intersectSet.getHeight() > 1) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+    public SimulationEngine getEngine() {
+        return engine;
     }
 
-    @Override
-    public void removeAll() {
-        super.removeAll();
-        gizmoList.clear();
+    public void resetBall() {
+        synchronized (frameLock) {
+            engine.getBall().resetPosition();
+        }
+        repaint();
     }
 
-    public List<AbstractGizmo> getGizmoList() {
-        return gizmoList;
+    /**
+     * Starts recording every run, or stops and hands the last run recorded to
+     * the file solver to be saved.
+     */
+    public void record(ActionEvent event, FileSolver fileSolver) {
+        JButton button = (JButton) event.getSource();
+        if (button.getText() == "Record") {
+            button.setText("Stop recording");
+            recordingOn = true;
+            synchronized (frameLock) {
+                recording = mode ? Recording.start(engine, loop.getTickMillis()) : null;
+            }
+        } else {
+            button.setText("Record");
+            if (recording != null && mode) recording.finish(engine.getTickCount());
+            recordingOn = false;
+            Recording last = recording;
+            recording = null;
+            if (last == null) JOptionPane.showMessageDialog(this, "no run was recorded");
+            else fileSolver.saveRecording(last);
+        }
     }
 
-    public void resetBall() {
-        ball.resetPosition();
+    /**
+     * @modifies the board and balls
+     * @effects restores the start of the recorded run and replays it in real time.
+     */
+    public void replay(Recording recorded) {
+        setMode(false);
+        replay = recorded.replay(engine);
+        loop = new FixedStepLoop(recorded.getInterval(), MAX_TICKS_PER_FRAME);
         repaint();
+        setMode(true);
     }
 
     public void setTrack(ActionEvent event) {
@@ -336,11 +576,11 @@ public class AnimationWindow extends JComponent {
         if (button.getText() == "Set track") {
             //clickedGizmo.crashMovable(true);
             button.setText("Set normal");
-            trackMode = true;
+            engine.setTrackMode(true);
         } else {
             //clickedGizmo.crashMovable(false);
             button.setText("Set track");
-            trackMode = false;
+            engine.setTrackMode(false);
         }
 
     }
@@ -358,29 +598,47 @@ public class AnimationWindow extends JComponent {
         public void keyPressed(KeyEvent e) {
             int keynum = e.getKeyCode();
             if (keynum == KeyEvent.VK_F) { // press A-J
-                for (int i = 0; i < flipperList.size(); i++) {
-                    flipperList.get(i).flip();
-                }
+                flip(true);
+            }
+            if (keynum == KeyEvent.VK_LEFT) {
+                rewind();
             }
-            repaint();
         }
 
         @Override
         public void keyReleased(KeyEvent e) {
             int keynum = e.getKeyCode();
             if (keynum == KeyEvent.VK_F) { // press A-J
-                for (int i = 0; i < flipperList.size(); i++) {
-                    Flipper f = flipperList.get(i);
-                    while(f.rotatingDegree!=0) f.unflip();
-                }
+                flip(false);
             }
-            repaint();
         }
 
         @Override
         public void keyTyped(KeyEvent e) {
         }
 
+        /**
+         * Takes the world back one second, or as far as the history goes; not
+         * while recording or replaying, as a recording cannot hold it.
+         */
+        private void rewind() {
+            WorldHistory history = engine.getHistory();
+            synchronized (frameLock) {
+                if (history == null || replay != null || recordingOn || history.getSize() == 0) return;
+                history.rewind(engine, Math.min(TICKS_PER_SECOND, history.getSize() - 1));
+                holdBalls();
+            }
+            repaint();
+        }
+
+        private void flip(boolean flipped) {
+            synchronized (frameLock) {
+                if (replay != null) return;
+                engine.setFlipped(flipped);
+                if (recordingOn && recording != null) recording.input(engine.getTickCount(), flipped);
+            }
+        }
+
         /**
          * Callback for the timer
          *
@@ -408,32 +666,21 @@ public class AnimationWindow extends JComponent {
                 b.setEnabled(false);
             }
 
-            for (AbstractGizmo abstractGizmo : gizmoList) {
-                Rectangle[] rects = abstractGizmo.boundingBoxes();
-                for (Rectangle rect : rects) {
-                    if (e.getX() >= rect.x && e.getX() <= rect.x + rect.getWidth()
-                            && e.getY() >= rect.y && e.getY() <= rect.y + rect.getHeight()) {
-                        clickedGizmo = abstractGizmo;
-                        for (JButton b : optionButton) {
-                            b.setEnabled(true);
-                        }
-                        if (clickedGizmo.crashMove) optionButton.get(optionButton.size() - 1).setText("Set unmovable");
-                        else optionButton.get(optionButton.size() - 1).setText("Set movable");
-                    }
+            clickedGizmo = engine.pickGizmo(e.getX(), e.getY());
+            if (clickedGizmo != null) {
+                for (JButton b : optionButton) {
+                    b.setEnabled(true);
                 }
+                if (clickedGizmo.crashMove) optionButton.get(optionButton.size() - 1).setText("Set unmovable");
+                else optionButton.get(optionButton.size() - 1).setText("Set movable");
             }
 
         }
 
         @Override
-        public synchronized void mouseDragged(MouseEvent e) {
+        public void mouseDragged(MouseEvent e) {
             if (clickedGizmo != null) {
-                Rectangle[] olds = clickedGizmo.boundingBoxes();
-                clickedGizmo.buildMove(e.getX(), e.getY());
-                for (AbstractGizmo abstractGizmo : gizmoList) {
-                    if (abstractGizmo != clickedGizmo && hasCoincidenceWithOthers(abstractGizmo) == true)
-                        clickedGizmo.buildMove((int) olds[0].x, (int) olds[0].y);
-                }
+                moveClickedGizmo(e.getX(), e.getY());
                 repaint();
             }
         }
@@ -441,12 +688,23 @@ public class AnimationWindow extends JComponent {
         @Override
         public void mouseReleased(MouseEvent e) {
             if (clickedGizmo != null) {
-                Rectangle[] olds = clickedGizmo.boundingBoxes();
-                clickedGizmo.buildMove(e.getX(), e.getY());
+                moveClickedGizmo(e.getX(), e.getY());
                 repaint();
             }
         }
 
+        /**
+         * @modifies clickedGizmo
+         * @effects moves clickedGizmo to the cell at (x, y), unless it would
+         * overlap another gizmo there.
+         */
+        private void moveClickedGizmo(int x, int y) {
+            int oldX = clickedGizmo.x, oldY = clickedGizmo.y;
+            clickedGizmo.buildMove(x, y);
+            if (engine.hasCoincidenceWithOthers(clickedGizmo))
+                clickedGizmo.setPosition(oldX, oldY);
+        }
+
         @Override
         public void mouseMoved(MouseEvent e) {
 
@@ -1,4 +1,3 @@
-import javafx.geometry.Orientation;
 import physics.Circle;
 
 import javax.swing.*;
@@ -98,6 +97,8 @@ public class ApplicationWindow extends JFrame {
         addButton("Back to start", "Put ball at start position", event -> animationWindow.resetBall(), controlObjectToolBar);
         addButton("Stop", "Stop the animation", event -> animationWindow.setMode(false), controlObjectToolBar);
         addButton("Quit", "Quit the program", event -> System.exit(0), controlObjectToolBar);
+        addButton("Record", "Record the runs, to save the last one", event -> animationWindow.record(event, fileSolver), controlObjectToolBar);
+        addButton("Replay", "Replay a recorded run", event -> fileSolver.readRecording(), controlObjectToolBar);
         controlObjectToolBar.addSeparator();
         JButton deleteButton = addButton("Delete", "Delete this gizmo", event -> animationWindow.delete(), false, controlObjectToolBar);
         list.add(deleteButton);
@@ -0,0 +1,141 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Overview: a BallBroadphase finds the pairs of balls that may collide within
+ * the next stretch of time with sort-and-sweep.  Every ball in play gets a box
+ * covering everywhere it can reach in that time, the boxes are kept sorted by
+ * their left edge, and only balls whose boxes overlap along x are compared.
+ * Between ticks the order barely changes, so the insertion sort is close to
+ * linear and finding the pairs stays near O(n log n) overall.
+ */
+public class BallBroadphase {
+
+    private int count;
+    // ball indices, sorted by the left edge of their box.
+    private int[] order = new int[0];
+    // the box of every ball, indexed like the ball list.
+    private double[] minX = new double[0];
+    private double[] minY = new double[0];
+    private double[] maxX = new double[0];
+    private double[] maxY = new double[0];
+    // candidate pairs, flattened: pairs[2k] and pairs[2k+1] are the k-th pair.
+    private int[] pairs = new int[32];
+    private int pairCount;
+
+    /**
+     * @modifies this
+     * @effects rebuilds the boxes of balls for a stretch of time (in time units
+     * of 100ms) and the list of pairs whose boxes overlap.
+     */
+    public void update(List<BouncingBall> balls, double time) {
+        int n = balls.size();
+        boolean resized = n != count;
+        if (resized) {
+            count = n;
+            order = new int[n];
+            for (int i = 0; i < n; i++) order[i] = i;
+            minX = new double[n];
+            minY = new double[n];
+            maxX = new double[n];
+            maxY = new double[n];
+        }
+        for (int i = 0; i < n; i++) {
+            BouncingBall ball = balls.get(i);
+            if (!ball.isInPlay()) {
+                // an empty box, sorted last and overlapping nothing.
+                minX[i] = minY[i] = Double.POSITIVE_INFINITY;
+                maxX[i] = maxY[i] = Double.NEGATIVE_INFINITY;
+                continue;
+            }
+            double reach = ball.getRadius() + ball.maxSpeed(time) * time;
+            minX[i] = ball.getX() - reach;
+            maxX[i] = ball.getX() + reach;
+            minY[i] = ball.getY() - reach;
+            maxY[i] = ball.getY() + reach;
+        }
+        if (resized) sortFully();
+        else sort();
+        pairCount = 0;
+        for (int a = 0; a < n; a++) {
+            int i = order[a];
+            for (int b = a + 1; b < n && minX[order[b]] <= maxX[i]; b++) {
+                int j = order[b];
+                if (minY[j] <= maxY[i] && minY[i] <= maxY[j]) {
+                    addPair(i, j);
+                }
+            }
+        }
+    }
+
+    public int getPairCount() {
+        return pairCount;
+    }
+
+    public int getFirst(int pair) {
+        return pairs[2 * pair];
+    }
+
+    public int getSecond(int pair) {
+        return pairs[2 * pair + 1];
+    }
+
+    /**
+     * @return true if the box of ball i covers the given box.
+     */
+    public boolean covers(int i, double x0, double y0, double x1, double y1) {
+        return minX[i] <= x0 && minY[i] <= y0 && maxX[i] >= x1 && maxY[i] >= y1;
+    }
+
+    /**
+     * @modifies this
+     * @effects enlarges the box of ball i to also cover the given box.  The
+     * sorted order and the pairs are not updated; use overlaps() to find the
+     * new neighbours of i.
+     */
+    public void grow(int i, double x0, double y0, double x1, double y1) {
+        minX[i] = Math.min(minX[i], x0);
+        minY[i] = Math.min(minY[i], y0);
+        maxX[i] = Math.max(maxX[i], x1);
+        maxY[i] = Math.max(maxY[i], y1);
+    }
+
+    public boolean overlaps(int i, int j) {
+        return minX[j] <= maxX[i] && minX[i] <= maxX[j] && minY[j] <= maxY[i] && minY[i] <= maxY[j];
+    }
+
+    /**
+     * Sorts order from scratch, for when the previous order means nothing.
+     */
+    private void sortFully() {
+        Integer[] boxed = new Integer[count];
+        for (int a = 0; a < count; a++) boxed[a] = order[a];
+        Arrays.sort(boxed, (i, j) -> Double.compare(minX[i], minX[j]));
+        for (int a = 0; a < count; a++) order[a] = boxed[a];
+    }
+
+    /**
+     * Insertion sort, close to linear on the nearly sorted order of the previous tick.
+     */
+    private void sort() {
+        for (int a = 1; a < count; a++) {
+            int i = order[a];
+            double key = minX[i];
+            int b = a - 1;
+            while (b >= 0 && minX[order[b]] > key) {
+                order[b + 1] = order[b];
+                b--;
+            }
+            order[b + 1] = i;
+        }
+    }
+
+    private void addPair(int i, int j) {
+        if (2 * pairCount + 2 > pairs.length) {
+            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+        }
+        pairs[2 * pairCount] = i;
+        pairs[2 * pairCount + 1] = j;
+        pairCount++;
+    }
+}
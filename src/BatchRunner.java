@@ -0,0 +1,288 @@
+import physics.Vect;
+
+import java.awt.*;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Overview: a BatchRunner answers questions like "what fraction of launches
+ * end in an absorber within N seconds" for a board by Monte Carlo.  It reads
+ * a .gizmo file once, then runs many independent worlds built from it, each
+ * with one ball launched from a random free spot at a random velocity, on a
+ * fork-join pool across all cores, without any Swing.  The outcome of every
+ * run (absorbed or not, when, and which gizmos the ball hit) is aggregated
+ * into a Result.
+ * Run i draws its launch from a Random seeded with seed and i only, so a
+ * batch gives the same Result however it is split between threads.
+ *
+ * Usage: java BatchRunner board.gizmo [runs] [seconds] [seed]
+ */
+public class BatchRunner {
+
+    // runs below which a task runs them itself instead of forking.
+    private static final int RUNS_PER_TASK = 16;
+    // largest launch speed along each axis, in pixels per time unit.
+    private static final int MAX_SPEED = 60;
+
+    private final List<Constructor<? extends AbstractGizmo>> classes = new ArrayList<>();
+    private final List<int[]> placements = new ArrayList<>();
+    private final List<Boolean> crashMoves = new ArrayList<>();
+    private final String[] names;
+    // length of a tick in milliseconds.
+    private final double tickMillis;
+
+    /**
+     * @effects reads the board of file, in the format written by FileSolver.save(),
+     * to run with ticks as long as the window runs them, SimulationEngine.getTickMillis().
+     * @throws IOException if file cannot be read or names no gizmo class.
+     */
+    public BatchRunner(File file) throws IOException {
+        this(file, SimulationEngine.getTickMillis());
+    }
+
+    /**
+     * @effects reads the board of file, in the format written by FileSolver.save(),
+     * to run with ticks of tickMillis milliseconds.
+     * @throws IOException if file cannot be read or names no gizmo class.
+     */
+    public BatchRunner(File file, double tickMillis) throws IOException {
+        if (!(tickMillis > 0)) throw new IllegalArgumentException("tickMillis must be positive");
+        this.tickMillis = tickMillis;
+        try (BoardReader reader = new BoardReader(new FileReader(file))) {
+            while (reader.next()) {
+                classes.add(reader.getConstructor());
+                placements.add(new int[]{reader.getX(), reader.getY(), reader.getR(), reader.getDegree()});
+                crashMoves.add(reader.isCrashMove());
+            }
+        }
+        names = new String[classes.size()];
+        for (int i = 0; i < names.length; i++) {
+            int[] p = placements.get(i);
+            names[i] = classes.get(i).getDeclaringClass().getName() + " at (" + p[0] + "," + p[1] + ")";
+        }
+    }
+
+    /**
+     * @return a new world holding a fresh copy of every gizmo of the board, in file order.
+     */
+    public SimulationEngine newWorld() {
+        SimulationEngine engine = new SimulationEngine();
+        for (int i = 0; i < classes.size(); i++) {
+            int[] p = placements.get(i);
+            try {
+                engine.addGizmo(classes.get(i).newInstance(p[0], p[1], p[2], p[3], crashMoves.get(i), engine));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("cannot create " + names[i], e);
+            }
+        }
+        engine.compileBoard();
+        return engine;
+    }
+
+    public double getTickMillis() {
+        return tickMillis;
+    }
+
+    public int getGizmoCount() {
+        return names.length;
+    }
+
+    /**
+     * @return the class and position of the i-th gizmo of the board.
+     */
+    public String getGizmoName(int i) {
+        return names[i];
+    }
+
+    /**
+     * Runs runs independent launches of at most seconds each on the common fork-join pool.
+     */
+    public Result run(int runs, double seconds, long seed) {
+        return run(ForkJoinPool.commonPool(), runs, seconds, seed);
+    }
+
+    public Result run(ForkJoinPool pool, int runs, double seconds, long seed) {
+        int ticks = (int) Math.ceil(seconds * 1000 / tickMillis);
+        return pool.invoke(new Batch(0, runs, ticks, seed));
+    }
+
+    /**
+     * @return the outcome of run i alone.
+     */
+    Result runOne(int i, int ticks, long seed) {
+        Result result = new Result(names.length);
+        SimulationEngine engine = newWorld();
+        Map<AbstractGizmo, Integer> index = new IdentityHashMap<>();
+        for (int k = 0; k < engine.getGizmoList().size(); k++) index.put(engine.getGizmoList().get(k), k);
+        engine.setImpactListener((ball, gizmo) -> result.hits[index.get(gizmo)]++);
+        launch(engine, new Random(seed * 31 + i));
+        result.runs = 1;
+        for (int tick = 1; tick <= ticks; tick++) {
+            engine.step(tickMillis);
+            if (!engine.hasBallInPlay()) {
+                result.add(tick * tickMillis / 1000);
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Puts the ball of engine on a random spot clear of every gizmo, at a random velocity.
+     */
+    private static void launch(SimulationEngine engine, Random random) {
+        BouncingBall ball = engine.getBall();
+        int radius = ball.getRadius();
+        Rectangle box = new Rectangle();
+        for (int attempt = 0; attempt < 1000; attempt++) {
+            int x = radius + random.nextInt(engine.getWidth() - 2 * radius);
+            int y = radius + random.nextInt(engine.getHeight() - 2 * radius);
+            box.setBounds(x - radius - 1, y - radius - 1, 2 * radius + 2, 2 * radius + 2);
+            if (engine.hasCoincidenceWithOthers(box)) continue;
+            ball.setPosition(x, y);
+            break;
+        }
+        ball.setVelocity(new Vect(random.nextInt(2 * MAX_SPEED + 1) - MAX_SPEED,
+                random.nextInt(2 * MAX_SPEED + 1) - MAX_SPEED));
+    }
+
+    /**
+     * The runs from first (inclusive) to last (exclusive), split in halves down to RUNS_PER_TASK.
+     */
+    private class Batch extends RecursiveTask<Result> {
+        private static final long serialVersionUID = 1L;
+
+        private final int first, last, ticks;
+        private final long seed;
+
+        Batch(int first, int last, int ticks, long seed) {
+            this.first = first;
+            this.last = last;
+            this.ticks = ticks;
+            this.seed = seed;
+        }
+
+        @Override
+        protected Result compute() {
+            if (last - first <= RUNS_PER_TASK) {
+                Result result = new Result(names.length);
+                for (int i = first; i < last; i++) result.merge(runOne(i, ticks, seed));
+                return result;
+            }
+            int middle = (first + last) >>> 1;
+            Batch left = new Batch(first, middle, ticks, seed);
+            left.fork();
+            Result result = new Batch(middle, last, ticks, seed).compute();
+            result.merge(left.join());
+            return result;
+        }
+    }
+
+    /**
+     * Overview: the aggregated outcome of a number of runs: how many ended
+     * with the ball in an absorber and when, and how often each gizmo of the
+     * board was hit.
+     */
+    public static class Result {
+        private int runs;
+        private int absorbed;
+        private double totalAbsorbTime;
+        private double minAbsorbTime = Double.POSITIVE_INFINITY;
+        private double maxAbsorbTime;
+        private final long[] hits;
+
+        Result(int gizmos) {
+            hits = new long[gizmos];
+        }
+
+        private void add(double absorbTime) {
+            absorbed++;
+            totalAbsorbTime += absorbTime;
+            minAbsorbTime = Math.min(minAbsorbTime, absorbTime);
+            maxAbsorbTime = Math.max(maxAbsorbTime, absorbTime);
+        }
+
+        /**
+         * @modifies this
+         * @effects adds the runs of other to this.
+         */
+        void merge(Result other) {
+            runs += other.runs;
+            absorbed += other.absorbed;
+            totalAbsorbTime += other.totalAbsorbTime;
+            minAbsorbTime = Math.min(minAbsorbTime, other.minAbsorbTime);
+            maxAbsorbTime = Math.max(maxAbsorbTime, other.maxAbsorbTime);
+            for (int i = 0; i < hits.length; i++) hits[i] += other.hits[i];
+        }
+
+        public int getRuns() {
+            return runs;
+        }
+
+        public int getAbsorbed() {
+            return absorbed;
+        }
+
+        public double getAbsorbRate() {
+            return runs == 0 ? 0 : (double) absorbed / runs;
+        }
+
+        /**
+         * @return the mean time in seconds until the ball was absorbed, over the absorbed runs.
+         */
+        public double getMeanAbsorbTime() {
+            return absorbed == 0 ? Double.NaN : totalAbsorbTime / absorbed;
+        }
+
+        public double getMinAbsorbTime() {
+            return absorbed == 0 ? Double.NaN : minAbsorbTime;
+        }
+
+        public double getMaxAbsorbTime() {
+            return absorbed == 0 ? Double.NaN : maxAbsorbTime;
+        }
+
+        /**
+         * @return the number of impacts on the i-th gizmo of the board over all runs.
+         */
+        public long getHits(int i) {
+            return hits[i];
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: java BatchRunner board.gizmo [runs] [seconds] [seed]");
+            System.exit(2);
+        }
+        BatchRunner runner = new BatchRunner(new File(args[0]));
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 60;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        long start = System.nanoTime();
+        Result result = runner.run(runs, seconds, seed);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d runs of %.0fs on %d threads in %.2fs%n", result.getRuns(), seconds,
+                ForkJoinPool.commonPool().getParallelism(), elapsed);
+        System.out.printf("absorbed: %d (%.1f%%)%n", result.getAbsorbed(), 100 * result.getAbsorbRate());
+        if (result.getAbsorbed() > 0) {
+            System.out.printf("time to absorb: mean %.2fs, min %.2fs, max %.2fs%n", result.getMeanAbsorbTime(),
+                    result.getMinAbsorbTime(), result.getMaxAbsorbTime());
+        }
+        System.out.println("hits per gizmo:");
+        for (int i = 0; i < runner.getGizmoCount(); i++) {
+            System.out.printf("  %8d  %s%n", result.getHits(i), runner.getGizmoName(i));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Overview: the binary board format, a compact alternative to the text
+ * format of FileSolver.save() for large generated boards.  A file is
+ * (little-endian):
+ *   header   magic "GZMB", version (short), record size (short),
+ *            type count (int), record count (int), CRC32C (int)
+ *   types    per gizmo class: name length (short) and UTF-8 name
+ *   records  per gizmo, RECORD_SIZE bytes: type index (short), flags (byte),
+ *            a reserved byte, then x, y, r and degree (int each)
+ * The checksum covers every byte of the file but its own four, so a file
+ * truncated, edited or damaged since it was written is refused.  Files are
+ * written from a heap buffer with FileChannel.write(), as a mapping would keep
+ * them locked on Windows until it is garbage collected, and read through a
+ * read-only memory map; each gizmo class is resolved once, from the type table.
+ */
+public final class BinaryBoard {
+
+    public static final String EXTENSION = "gzb";
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 'G' | 'Z' << 8 | 'M' << 16 | 'B' << 24;
+    private static final int HEADER_SIZE = 20;
+    private static final int CHECKSUM_OFFSET = 16;
+    static final int RECORD_SIZE = 20;
+    // flags of a record.
+    private static final int CRASH_MOVE = 1;
+
+    private BinaryBoard() {
+    }
+
+    /**
+     * @effects writes gizmos to file in the binary format, replacing its contents.
+     * @throws IOException if file cannot be written.
+     */
+    public static void write(File file, List<? extends AbstractGizmo> gizmos) throws IOException {
+        Map<Class<?>, Integer> typeIndex = new IdentityHashMap<>();
+        List<byte[]> typeNames = new ArrayList<>();
+        int size = HEADER_SIZE;
+        for (AbstractGizmo gizmo : gizmos) {
+            if (typeIndex.containsKey(gizmo.getClass())) continue;
+            byte[] name = gizmo.getClass().getName().getBytes(StandardCharsets.UTF_8);
+            typeIndex.put(gizmo.getClass(), typeNames.size());
+            typeNames.add(name);
+            size += 2 + name.length;
+        }
+        size += gizmos.size() * RECORD_SIZE;
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putShort((short) VERSION).putShort((short) RECORD_SIZE)
+                .putInt(typeNames.size()).putInt(gizmos.size()).putInt(0);
+        for (byte[] name : typeNames) {
+            out.putShort((short) name.length).put(name);
+        }
+        for (AbstractGizmo gizmo : gizmos) {
+            out.putShort(typeIndex.get(gizmo.getClass()).shortValue());
+            out.put((byte) (gizmo.isCrashMove() ? CRASH_MOVE : 0)).put((byte) 0);
+            out.putInt(gizmo.x).putInt(gizmo.y).putInt(gizmo.r).putInt(gizmo.degree);
+        }
+        out.putInt(CHECKSUM_OFFSET, checksum(out));
+        out.flip();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) channel.write(out);
+            channel.force(false);
+        }
+    }
+
+    /**
+     * @return every gizmo of the board of file, created for engine in file
+     * order with their geometry built, but not added to it.
+     * @throws IOException if file cannot be read, is not a binary board of a
+     * supported version, or fails its checksum.
+     */
+    public static List<AbstractGizmo> read(File file, SimulationEngine engine) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) throw new IOException("not a binary board");
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            in.order(ByteOrder.LITTLE_ENDIAN);
+            if (in.getInt() != MAGIC) throw new IOException("not a binary board");
+            int version = in.getShort();
+            if (version != VERSION) throw new IOException("unsupported binary board version " + version);
+            int recordSize = in.getShort();
+            int typeCount = in.getInt();
+            int recordCount = in.getInt();
+            int expected = in.getInt();
+            if (recordSize != RECORD_SIZE || typeCount < 0 || recordCount < 0)
+                throw new IOException("malformed binary board header");
+            if (checksum(in) != expected) throw new IOException("checksum mismatch, the file is damaged");
+
+            List<Constructor<? extends AbstractGizmo>> types = new ArrayList<>(typeCount);
+            for (int i = 0; i < typeCount; i++) {
+                byte[] name = new byte[in.getShort() & 0xffff];
+                in.get(name);
+                types.add(BoardReader.constructorOf(new String(name, StandardCharsets.UTF_8)));
+            }
+            if (in.remaining() != (long) recordCount * RECORD_SIZE)
+                throw new IOException("expected " + recordCount + " records");
+
+            List<AbstractGizmo> gizmos = new ArrayList<>(recordCount);
+            for (int i = 0; i < recordCount; i++) {
+                int type = in.getShort() & 0xffff;
+                int flags = in.get();
+                in.get();
+                int x = in.getInt(), y = in.getInt(), r = in.getInt(), degree = in.getInt();
+                if (type >= typeCount) throw new IOException("record " + i + ": no type " + type);
+                AbstractGizmo gizmo;
+                try {
+                    gizmo = types.get(type).newInstance(x, y, r, degree, (flags & CRASH_MOVE) != 0, engine);
+                } catch (ReflectiveOperationException e) {
+                    throw new IOException("record " + i + ": cannot create "
+                            + types.get(type).getDeclaringClass().getName(), e);
+                }
+                gizmo.getLines();
+                gizmos.add(gizmo);
+            }
+            return gizmos;
+        }
+    }
+
+    /**
+     * @return whether file is named as a binary board.
+     */
+    public static boolean isBinary(File file) {
+        return file.getName().endsWith("." + EXTENSION);
+    }
+
+    // CRC32C of all of buffer but the checksum field, leaving its position alone.
+    private static int checksum(ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer all = buffer.duplicate();
+        all.limit(CHECKSUM_OFFSET).position(0);
+        crc.update(all);
+        all.limit(buffer.capacity()).position(CHECKSUM_OFFSET + 4);
+        crc.update(all);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,186 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Overview: a BoardReader reads a board in the format written by
+ * FileSolver.save(), one gizmo per line as space separated key=value fields
+ * (x, y, r, crashMove, degree and class, in any order), as a stream: next()
+ * scans the fields of the next gizmo without splitting the line, and create()
+ * builds it.  The constructor of each gizmo class is looked up once per
+ * reader, however many gizmos of that class the board has.  Blank lines and
+ * unknown keys are skipped.
+ * A BoardReader touches no window and creates gizmos as non-trackers,
+ * without reading the mode of the engine, so boards can be read off the
+ * event dispatch thread.
+ */
+public class BoardReader implements Closeable {
+
+    private final BufferedReader in;
+    private final Map<String, Constructor<? extends AbstractGizmo>> constructors = new HashMap<>();
+    private int lineNumber;
+
+    private int x, y, r, degree;
+    private boolean crashMove;
+    private Constructor<? extends AbstractGizmo> constructor;
+
+    public BoardReader(Reader in) {
+        this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+    }
+
+    /**
+     * @return every gizmo of the board of file, created for engine in file
+     * order with their geometry built, but not added to it.
+     * @throws IOException if file cannot be read or is not a board.
+     */
+    public static List<AbstractGizmo> readAll(File file, SimulationEngine engine) throws IOException {
+        List<AbstractGizmo> gizmos = new ArrayList<>();
+        try (BoardReader reader = new BoardReader(new FileReader(file))) {
+            while (reader.next()) {
+                AbstractGizmo gizmo = reader.create(engine);
+                gizmo.getLines();
+                gizmos.add(gizmo);
+            }
+        }
+        return gizmos;
+    }
+
+    /**
+     * @modifies this
+     * @effects reads the fields of the next gizmo.
+     * @return false at the end of the board.
+     * @throws IOException if the line cannot be read, has a malformed value or names no gizmo class.
+     */
+    public boolean next() throws IOException {
+        String line;
+        do {
+            line = in.readLine();
+            if (line == null) return false;
+            lineNumber++;
+        } while (line.trim().isEmpty());
+        x = y = r = degree = 0;
+        crashMove = false;
+        constructor = null;
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(line.charAt(i))) i++;
+            int keyStart = i;
+            while (i < length && line.charAt(i) != '=' && !Character.isWhitespace(line.charAt(i))) i++;
+            int keyEnd = i;
+            if (i < length && line.charAt(i) == '=') i++;
+            int valueStart = i;
+            while (i < length && !Character.isWhitespace(line.charAt(i))) i++;
+            field(line, keyStart, keyEnd, valueStart, i);
+        }
+        if (constructor == null) throw new IOException("line " + lineNumber + ": no gizmo class");
+        return true;
+    }
+
+    /**
+     * @return a new gizmo for engine with the fields read by the last call to next().
+     * @throws IOException if the gizmo class cannot be instantiated.
+     */
+    public AbstractGizmo create(SimulationEngine engine) throws IOException {
+        try {
+            return constructor.newInstance(x, y, r, degree, crashMove, engine);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("line " + lineNumber + ": cannot create " + constructor.getDeclaringClass().getName(), e);
+        }
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getR() {
+        return r;
+    }
+
+    public int getDegree() {
+        return degree;
+    }
+
+    public boolean isCrashMove() {
+        return crashMove;
+    }
+
+    /**
+     * @return the constructor, taking x, y, r, degree, crashMove and the engine,
+     * of the class of the gizmo read by the last call to next().
+     */
+    public Constructor<? extends AbstractGizmo> getConstructor() {
+        return constructor;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void field(String line, int keyStart, int keyEnd, int valueStart, int valueEnd) throws IOException {
+        if (valueStart == keyEnd) return;
+        try {
+            if (line.startsWith("class", keyStart) && keyEnd - keyStart == 5)
+                constructor = cachedConstructorOf(line.substring(valueStart, valueEnd));
+            else if (line.startsWith("crashMove", keyStart) && keyEnd - keyStart == 9)
+                crashMove = line.regionMatches(true, valueStart, "true", 0, 4) && valueEnd - valueStart == 4;
+            else if (keyEnd - keyStart == 1 && line.charAt(keyStart) == 'x')
+                x = Integer.parseInt(line, valueStart, valueEnd, 10);
+            else if (keyEnd - keyStart == 1 && line.charAt(keyStart) == 'y')
+                y = Integer.parseInt(line, valueStart, valueEnd, 10);
+            else if (keyEnd - keyStart == 1 && line.charAt(keyStart) == 'r')
+                r = Integer.parseInt(line, valueStart, valueEnd, 10);
+            else if (line.startsWith("degree", keyStart) && keyEnd - keyStart == 6)
+                degree = Integer.parseInt(line, valueStart, valueEnd, 10);
+        } catch (NumberFormatException e) {
+            throw new IOException("line " + lineNumber + ": bad value in "
+                    + line.substring(keyStart, valueEnd), e);
+        }
+    }
+
+    private Constructor<? extends AbstractGizmo> cachedConstructorOf(String className) throws IOException {
+        Constructor<? extends AbstractGizmo> c = constructors.get(className);
+        if (c != null) return c;
+        try {
+            c = constructorOf(className);
+        } catch (IOException e) {
+            throw new IOException("line " + lineNumber + ": " + e.getMessage(), e.getCause());
+        }
+        constructors.put(className, c);
+        return c;
+    }
+
+    /**
+     * @return the constructor of the gizmo class named className taking x, y,
+     * r, degree, crashMove and the engine.
+     * @throws IOException if there is no such gizmo class.
+     */
+    @SuppressWarnings("unchecked")
+    static Constructor<? extends AbstractGizmo> constructorOf(String className) throws IOException {
+        try {
+            Class<?> t = Class.forName(className);
+            if (!AbstractGizmo.class.isAssignableFrom(t)) throw new IOException("not a gizmo: " + className);
+            return (Constructor<? extends AbstractGizmo>) t.getDeclaredConstructor(
+                    int.class, int.class, int.class, int.class, boolean.class, SimulationEngine.class);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("unknown gizmo class: " + className, e);
+        }
+    }
+}
@@ -4,11 +4,16 @@ import physics.LineSegment;
 import physics.Vect;
 
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
 
 public class BouncingBall {
 
     // private final static double VELOCITY_STEP = 0.5f;
 
+    // a feature or ball closer than this (in time units) counts as hit.
+    final static double COLLISION_THRESHOLD = 0.5f;
+
     private double x = 10.0f;
 
     private double y = 10.0f;
@@ -23,7 +28,36 @@ public class BouncingBall {
     }
 
     public void setVelocity(Vect velocity) {
-        this.velocity = velocity;
+        setVelocity(velocity.x(), velocity.y());
+    }
+
+    /**
+     * Like setVelocity(Vect), without allocating.
+     */
+    public void setVelocity(double vx, double vy) {
+        this.vx = vx;
+        this.vy = vy;
+        version++;
+    }
+
+    public Vect getVelocity() {
+        return new Vect(vx, vy);
+    }
+
+    public double getVx() {
+        return vx;
+    }
+
+    public double getVy() {
+        return vy;
+    }
+
+    /**
+     * @return a counter that changes whenever the trajectory of the ball changes
+     * other than by advance(), so cached impact times can be checked for staleness.
+     */
+    public int getVersion() {
+        return version;
     }
 
     public int getRadius() {
@@ -34,39 +68,165 @@ public class BouncingBall {
         return new Vect(this.x, this.y);
     }
 
-    private Vect velocity;
+    // the velocity is kept as two doubles, so a tick can update it without allocating.
+    private double vx;
+    private double vy;
     private double gravity;
     private Vect friction;
 
     private int radius = 6;
+    private int version;
+
+    // reused by detectCollision(CollisionGrid) to collect nearby features.
+    private final ArrayList<CollisionInfo> candidates = new ArrayList<>();
+    // features tested by the last detectCollision().
+    private int featuresTested;
+    // reused by reflect() for the normal of the surface hit.
+    private final double[] normal = new double[2];
+    // reused by paint() for the clip and the bounds of the ball.
+    private final Rectangle clip = new Rectangle();
+    private final Rectangle bounds = new Rectangle();
 
 
     private Color color = new Color(255, 0, 0);
 
-    // Keep track of the animation window that will be drawing this ball.
-    private AnimationWindow win;
+    // false once the ball fell into an absorber, until it is put back with resetPosition().
+    private boolean inPlay = true;
+
+    // Keep track of the world this ball moves in.
+    private SimulationEngine engine;
 
     /**
      * Constructor.
-     * @param win Animation window that will be drawing this ball.
+     * @param engine world this ball moves in.
      */
-    public BouncingBall(AnimationWindow win) {
-        this.win = win;
-        this.velocity=new Vect(5.0,0.0);
+    public BouncingBall(SimulationEngine engine) {
+        this.engine = engine;
+        this.vx = 5.0;
+        this.vy = 0.0;
         gravity=5;
         friction=new Vect(1.0,1.0);
     }
 
+    /**
+     * @param engine world this ball moves in.
+     * @effects creates a ball centered at (x, y) moving with velocity.
+     */
+    public BouncingBall(SimulationEngine engine, double x, double y, Vect velocity) {
+        this(engine);
+        this.x = x;
+        this.y = y;
+        this.vx = velocity.x();
+        this.vy = velocity.y();
+    }
+
     public void remove(){
         this.x = -100;
         this.y = -100;
-        this.velocity=new Vect(5.0,0.0);
-        win.setMode(false);
+        setVelocity(5.0, 0.0);
+        inPlay = false;
+    }
+
+    /**
+     * @return false if the ball has been absorbed and not put back since.
+     */
+    public boolean isInPlay() {
+        return inPlay;
+    }
+
+    /**
+     * @effects puts an absorbed ball back in play where it is; the walls push it
+     * back into the world on its next move.
+     */
+    public void release() {
+        inPlay = true;
+    }
+
+    /**
+     * @return an upper bound of the speed of the ball over the next time units,
+     * as long as it only flies and bounces off static features.
+     */
+    public double maxSpeed(double time) {
+        return Math.sqrt(vx * vx + vy * vy) + gravity * time;
     }
 
     public void inTrack(){
-        double vx = this.velocity.x();
-        this.velocity=new Vect(vx,0.0);
+        setVelocity(vx, 0.0);
+    }
+
+    /**
+     * @modifies this
+     * @effects moves the ball in a straight line for time (in time units of
+     * 100ms), ignoring walls and gravity.
+     */
+    public void advance(double time) {
+        x += vx * time;
+        y += vy * time;
+    }
+
+    /**
+     * @return the constant velocity of the straight line the ball follows over
+     * a flight of time when half of the gravity is applied before it and half
+     * after it, as TimeOfImpactStepper does.
+     */
+    public Vect flightVelocity(double time) {
+        return new Vect(vx, vy + gravity * time / 2);
+    }
+
+    /**
+     * @modifies this
+     * @effects moves the ball along flight for time to the point of an impact,
+     * and gives it the vertical speed it has there under gravity, taken from the
+     * height it fell or rose so that impacts neither add nor remove energy.
+     */
+    public void advanceToImpact(double time, Vect flight) {
+        x += flight.x() * time;
+        y += flight.y() * time;
+        double squared = vy * vy + 2 * gravity * flight.y() * time;
+        double newVy = Math.copySign(Math.sqrt(Math.max(0, squared)), vy + gravity * time);
+        setVelocity(vx * friction.x(), newVy * friction.y());
+    }
+
+    /**
+     * @modifies this
+     * @effects pushes the ball back inside the world if it crossed a wall,
+     * reflecting it off that wall.
+     */
+    public void confine() {
+        double vx = this.vx;
+        double vy = this.vy;
+        if (x >= radius && x <= engine.getWidth() - radius
+                && y >= radius && y <= engine.getHeight() - radius) return;
+        if (x < radius) {
+            x = radius;
+            vx = Math.abs(vx);
+        }
+        if (x > engine.getWidth() - radius) {
+            x = engine.getWidth() - radius;
+            vx = -Math.abs(vx);
+        }
+        if (y < radius) {
+            y = radius;
+            vy = Math.abs(vy);
+        }
+        if (y > engine.getHeight() - radius) {
+            y = engine.getHeight() - radius;
+            vy = -Math.abs(vy);
+        }
+        setVelocity(vx, vy);
+    }
+
+    /**
+     * @modifies this
+     * @effects applies gravity and friction for time (in time units of 100ms)
+     * to the velocity, the same way move() does at the end of a tick.
+     */
+    public void applyForces(double time) {
+        double newVx = vx * friction.x();
+        double newVy = (vy + gravity * time) * friction.y();
+        if(newVx==0) newVx++;
+        if(newVy==0) newVy++;
+        setVelocity(newVx, newVy);
     }
 
     /**
@@ -74,19 +234,19 @@ public class BouncingBall {
      * @effects Moves the ball according to its velocity.  Reflections off
      * walls cause the ball to change direction.
      */
-    public void move(int inteval) {
-        double intevals=inteval*1.0f/100;
-        x +=  velocity.x() * intevals;
-        y +=  velocity.y() * intevals;
+    public void move(double inteval) {
+        double intevals=inteval/100;
+        x +=  vx * intevals;
+        y +=  vy * intevals;
 
-        double newVx = velocity.x()  ;
-        double newVy = velocity.y();
+        double newVx = vx;
+        double newVy = vy;
         if (x <= radius) {
             x = radius;
             newVx=-newVx;
         }
-        if (x >= win.getWidth() - radius) {
-            x = win.getWidth() - radius;
+        if (x >= engine.getWidth() - radius) {
+            x = engine.getWidth() - radius;
             newVx=-newVx;
         }
 
@@ -95,73 +255,185 @@ public class BouncingBall {
             y = radius;
             newVy=-newVy;
         }
-        if (y >= win.getHeight() - radius) {
-            y = win.getHeight() - radius;
+        if (y >= engine.getHeight() - radius) {
+            y = engine.getHeight() - radius;
             newVy=-newVy;
         }
         newVx = newVx  *friction.x();
         newVy = (newVy+ gravity*intevals )*friction.y();
         if(newVx==0) newVx++;
         if(newVy==0) newVy++;
-        this.velocity = new Vect(newVx, newVy);
+        setVelocity(newVx, newVy);
     }
 
     public CollisionInfo detectCollision(java.util.List<AbstractGizmo> gizmoList) {
         Circle c=new Circle(x,y,radius);
+        Vect velocity = getVelocity();
         //only line collision, fill others here!
         for (AbstractGizmo gizmo : gizmoList) {
-            for (LineSegment lineSegment : gizmo.lines) {
-                if (Geometry.timeUntilWallCollision(lineSegment,c,velocity)<=0.5f) {
+            for (LineSegment lineSegment : gizmo.getLines()) {
+                if (Geometry.timeUntilWallCollision(lineSegment,c,velocity)<=COLLISION_THRESHOLD) {
                     return new CollisionInfo(gizmo, lineSegment);
                 }
             }
 
-            for(Circle circle : gizmo.corners){
-                if(Geometry.timeUntilCircleCollision(circle,c,velocity)<=0.5f){
+            for(Circle circle : gizmo.getCorners()){
+                if(Geometry.timeUntilCircleCollision(circle,c,velocity)<=COLLISION_THRESHOLD){
                     return new CollisionInfo(gizmo, circle);
                 }
             }
         }
         return null;
     }
+
+    /**
+     * Like detectCollision(List), but only tests the features in the cells of
+     * grid swept by the ball, and returns the earliest hit among them.
+     */
+    public CollisionInfo detectCollision(CollisionGrid grid) {
+        double dx = vx * COLLISION_THRESHOLD;
+        double dy = vy * COLLISION_THRESHOLD;
+        double reach = radius + 1;
+        candidates.clear();
+        // sized for every feature once, so a ball speeding up later never grows it mid-run.
+        candidates.ensureCapacity(grid.featureCount());
+        grid.query(Math.min(x, x + dx) - reach, Math.min(y, y + dy) - reach,
+                Math.max(x, x + dx) + reach, Math.max(y, y + dy) + reach, candidates);
+        CollisionInfo earliest = null;
+        double earliestTime = COLLISION_THRESHOLD;
+        featuresTested = candidates.size();
+        for (int i = 0; i < candidates.size(); i++) {
+            CollisionInfo feature = candidates.get(i);
+            double time = feature.timeUntilImpact(x, y, radius, vx, vy);
+            if (time <= earliestTime) {
+                earliestTime = time;
+                earliest = feature;
+            }
+        }
+        return earliest;
+    }
+
+    /**
+     * Like detectCollision(CollisionGrid), but scans the packed features of store.
+     */
+    public CollisionInfo detectCollision(FeatureStore store) {
+        CollisionInfo earliest = store.earliest(x, y, radius, vx, vy, COLLISION_THRESHOLD);
+        featuresTested = store.getLastTested();
+        return earliest;
+    }
+
+    /**
+     * @return the number of features the last call to detectCollision(CollisionGrid)
+     * or detectCollision(FeatureStore) tested the ball against.
+     */
+    public int getFeaturesTested() {
+        return featuresTested;
+    }
+
+    /**
+     * Looks for an impact with the flippers that are turning, which the features
+     * indexed for detectCollision() only show in their pose at the start of the
+     * tick, with the rotating-wall equations of Geometry.
+     *
+     * @param found the feature found by detectCollision(), or null
+     * @return the earliest hit within the collision threshold among found and the
+     * features of the turning flippers, or null if there is none.
+     */
+    public CollisionInfo detectFlipperCollision(List<Flipper> flippers, CollisionInfo found) {
+        CollisionInfo earliest = null;
+        double earliestTime = COLLISION_THRESHOLD;
+        if (found != null && !isTurningFlipper(found.getGizmo())) {
+            earliest = found;
+            earliestTime = found.timeUntilImpact(x, y, radius, vx, vy);
+        }
+        double speed = Math.sqrt(vx * vx + vy * vy);
+        Circle c = null;
+        Vect velocity = null;
+        for (int i = 0; i < flippers.size(); i++) {
+            Flipper flipper = flippers.get(i);
+            double angularVelocity = flipper.getAngularVelocity();
+            if (angularVelocity == 0 || !flipper.canReach(x, y, radius, speed, COLLISION_THRESHOLD)) continue;
+            if (c == null) {
+                c = new Circle(x, y, radius);
+                velocity = getVelocity();
+            }
+            Vect pivot = flipper.getPivot();
+            for (LineSegment line : flipper.getLines()) {
+                double time = Geometry.timeUntilRotatingWallCollision(line, pivot, angularVelocity, c, velocity);
+                if (time <= earliestTime) {
+                    earliestTime = time;
+                    earliest = new CollisionInfo(flipper, line);
+                }
+            }
+            for (Circle corner : flipper.getCorners()) {
+                double time = Geometry.timeUntilRotatingCircleCollision(corner, pivot, angularVelocity, c, velocity);
+                if (time <= earliestTime) {
+                    earliestTime = time;
+                    earliest = new CollisionInfo(flipper, corner);
+                }
+            }
+        }
+        return earliest;
+    }
+
+    static boolean isTurningFlipper(AbstractGizmo gizmo) {
+        return gizmo instanceof Flipper && ((Flipper) gizmo).getAngularVelocity() != 0;
+    }
+
+    /**
+     * @modifies this
+     * @effects reflects the velocity off the surface of feature the ball touches,
+     * like Geometry.reflectWall and Geometry.reflectCircle but without allocating.
+     */
+    public void reflect(CollisionInfo feature) {
+        feature.normalAt(x, y, normal);
+        double vn = vx * normal[0] + vy * normal[1];
+        setVelocity(vx - 2 * vn * normal[0], vy - 2 * vn * normal[1]);
+    }
+
     public void dealCollision(CollisionInfo collisionInfo) {
         AbstractGizmo abstractGizmo = collisionInfo.getGizmo();
-        Vect newVect;
-        LineSegment lineSegment;
-        Circle circle;
-        if(collisionInfo.getLineSegment() != null)
-        {
-            lineSegment = collisionInfo.getLineSegment();
-            // Geometry.timeUntilWallCollision();
-            newVect = Geometry.reflectWall(lineSegment, this.velocity);
-            this.setVelocity(newVect);
+        SimulationEvents.Collision event = SimulationEvents.isRecording() ? new SimulationEvents.Collision() : null;
+        if (event != null && event.shouldCommit()) {
+            event.gizmoClass = abstractGizmo.getClass().getName();
+            event.featureType = collisionInfo.getLineSegment() != null ? "segment" : "corner";
+            event.timeOfImpact = collisionInfo.timeUntilImpact(x, y, radius, vx, vy);
+            event.commit();
         }
-
-        else if(collisionInfo.getCircle() != null)
-        {
-            circle = collisionInfo.getCircle();
-            newVect = Geometry.reflectCircle(circle.getCenter(), this.getVect(), this.velocity);
-            this.setVelocity(newVect);
+        if (isTurningFlipper(abstractGizmo)) {
+            // the flipper hands its own speed at the point of impact to the ball.
+            Flipper flipper = (Flipper) abstractGizmo;
+            Circle c = new Circle(x, y, radius);
+            if (collisionInfo.getLineSegment() != null)
+                setVelocity(Geometry.reflectRotatingWall(collisionInfo.getLineSegment(), flipper.getPivot(),
+                        flipper.getAngularVelocity(), c, getVelocity()));
+            else
+                setVelocity(Geometry.reflectRotatingCircle(collisionInfo.getCircle(), flipper.getPivot(),
+                        flipper.getAngularVelocity(), c, getVelocity()));
+        } else {
+            reflect(collisionInfo);
         }
 
         if(abstractGizmo.isCrashMove() == true)
         {
+            // relocate through buildMove() only, so the collision grid follows the gizmo.
+            int newX, newY;
             if(x < abstractGizmo.x)
-                abstractGizmo.x =abstractGizmo.x + 20;
+                newX =abstractGizmo.x + 20;
             else
-                abstractGizmo.x = abstractGizmo.x - 20;
+                newX = abstractGizmo.x - 20;
 
             if(x < abstractGizmo.y)
-                abstractGizmo.y =abstractGizmo.y + 20;
+                newY =abstractGizmo.y + 20;
             else
-                abstractGizmo.y = abstractGizmo.y- 20;
+                newY = abstractGizmo.y- 20;
 
             int ok = 1;
-            for(int j = 0; j < win.getGizmoList().size(); j++)
+            for(int j = 0; j < engine.getGizmoList().size(); j++)
             {
-                if(win.getGizmoList().get(j) != abstractGizmo)
+                if(engine.getGizmoList().get(j) != abstractGizmo)
                 {
-                    if(abstractGizmo.x == win.getGizmoList().get(j).x && abstractGizmo.y == win.getGizmoList().get(j).y)
+                    if(newX == engine.getGizmoList().get(j).x && newY == engine.getGizmoList().get(j).y)
                     {
                         ok = 0;
                         break;
@@ -171,8 +443,8 @@ public class BouncingBall {
 
             if(ok == 1)
             {
-                abstractGizmo.buildMove(abstractGizmo.x, abstractGizmo.y );
-                win.repaint();
+                abstractGizmo.buildMove(newX, newY);
+                engine.markBoardChanged();
             }
         }
     }
@@ -184,10 +456,18 @@ public class BouncingBall {
      * @param g Graphics context to be used for drawing.
      */
     public void paint(Graphics g) {
-        Rectangle clipRect = g.getClipBounds();
-        if (clipRect.intersects(this.boundingBox())) {
+        paint(g, x, y);
+    }
+
+    /**
+     * Like paint(Graphics), with the ball centered at (atX, atY) instead of
+     * where it is, such as between two ticks.
+     */
+    public void paint(Graphics g, double atX, double atY) {
+        Rectangle clipRect = g.getClipBounds(clip);
+        if (clipRect.intersects(boundingBox(atX, atY, bounds))) {
             g.setColor(color);
-            g.fillOval((int)x - radius, (int)y - radius, radius + radius, radius
+            g.fillOval((int)atX - radius, (int)atY - radius, radius + radius, radius
                     + radius);
         }
     }
@@ -202,11 +482,43 @@ public class BouncingBall {
                 radius + radius + 2);
     }
 
+    /**
+     * Like boundingBox(), stored in out instead of a new Rectangle.
+     *
+     * @return out
+     */
+    public Rectangle boundingBox(Rectangle out) {
+        return boundingBox(x, y, out);
+    }
+
+    /**
+     * Like boundingBox(Rectangle), for the ball centered at (atX, atY).
+     *
+     * @return out
+     */
+    public Rectangle boundingBox(double atX, double atY, Rectangle out) {
+        out.setBounds((int)atX - radius - 1, (int)atY - radius - 1, radius + radius + 2,
+                radius + radius + 2);
+        return out;
+    }
+
+
+    /**
+     * @modifies this
+     * @effects puts the ball in play centered at (x, y), keeping its velocity.
+     */
+    public void setPosition(double x, double y) {
+        this.x = x;
+        this.y = y;
+        inPlay = true;
+        version++;
+    }
 
     public void resetPosition() {
         x=0;
         y=0;
-        velocity=new Vect(5.0,0.0);
+        setVelocity(5.0, 0.0);
+        inPlay = true;
     }
 
 
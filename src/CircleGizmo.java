@@ -1,4 +1,3 @@
-import javafx.scene.shape.Ellipse;
 import physics.*;
 
 import java.awt.*;
@@ -8,18 +7,22 @@ import java.awt.geom.Line2D;
 
 public class CircleGizmo extends AbstractGizmo {
 
-    public CircleGizmo(AnimationWindow animationWindow) {
-        super(animationWindow);
+    public CircleGizmo(SimulationEngine engine) {
+        super(engine);
         if(isTrack()) color=Color.BLACK;
         else color=Color.PINK;
-        makeCircle();
     }
-    public CircleGizmo(int x, int y, int r, int degree, boolean crashMove,  AnimationWindow animationWindow) {
-        super(x,y,r,degree,crashMove,animationWindow);
+    public CircleGizmo(int x, int y, int r, int degree, boolean crashMove,  SimulationEngine engine) {
+        super(x,y,r,degree,crashMove,engine);
         if(isTrack()) color=Color.BLACK;
         else color=Color.PINK;
+    }
+
+    @Override
+    protected void makeGeometry() {
         makeCircle();
     }
+
     public void makeCircle(){
         lines.clear();
         corners.clear();
@@ -34,10 +37,9 @@ public class CircleGizmo extends AbstractGizmo {
     @Override
     public void paint(Graphics g) {
 
-        Rectangle clipRect = g.getClipBounds();
         Graphics2D g2d=(Graphics2D)g;
         g2d.setColor(color);
-        makeCircle();
+        validateGeometry();
         for(LineSegment lineSegment:lines){
             Line2D.Double d=lineSegment.toLine2D();
             g2d.draw(d);
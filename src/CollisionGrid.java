@@ -0,0 +1,182 @@
+import physics.Circle;
+import physics.LineSegment;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Overview: a CollisionGrid is a uniform grid laid over the world, one cell per
+ * SIZE_PER_UNIT square, which maps every cell to the collision features (the
+ * line segments and corner circles of the gizmos) overlapping it.  A ball only
+ * has to be tested against the features in the cells its path sweeps, instead
+ * of against every feature on the board.
+ * The grid is kept up to date incrementally: a gizmo is re-indexed whenever
+ * its geometry changes.
+ */
+public class CollisionGrid {
+
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final List<CollisionInfo>[] cells;
+    // features of every indexed gizmo (or other owner of features), as inserted into the cells.
+    private final Map<Object, List<CollisionInfo>> features;
+    // numbers the queries, to mark the features each one already reported.
+    private int queryStamp;
+    private int featureCount;
+
+    @SuppressWarnings("unchecked")
+    public CollisionGrid(int width, int height, int cellSize) {
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (width + cellSize - 1) / cellSize);
+        this.rows = Math.max(1, (height + cellSize - 1) / cellSize);
+        this.cells = (List<CollisionInfo>[]) new List<?>[columns * rows];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = new ArrayList<>();
+        }
+        this.features = new IdentityHashMap<>();
+    }
+
+    /**
+     * @modifies this
+     * @effects indexes the current lines and corners of gizmo.
+     */
+    public void insert(AbstractGizmo gizmo) {
+        if (features.containsKey(gizmo)) {
+            remove(gizmo);
+        }
+        List<CollisionInfo> list = new ArrayList<>(gizmo.getLines().size() + gizmo.getCorners().size());
+        for (LineSegment lineSegment : gizmo.getLines()) {
+            list.add(new CollisionInfo(gizmo, lineSegment));
+        }
+        for (Circle circle : gizmo.getCorners()) {
+            list.add(new CollisionInfo(gizmo, circle));
+        }
+        insert(gizmo, list);
+    }
+
+    /**
+     * @modifies this
+     * @effects indexes list under key, replacing what was indexed under it before.
+     */
+    public void insert(Object key, List<CollisionInfo> list) {
+        if (features.containsKey(key)) {
+            remove(key);
+        }
+        features.put(key, list);
+        featureCount += list.size();
+        for (CollisionInfo feature : list) {
+            feature.queryStamp = 0;
+            place(feature, true);
+        }
+    }
+
+    /**
+     * @modifies this
+     * @effects removes every feature indexed under key (a gizmo) from the grid.
+     */
+    public void remove(Object key) {
+        List<CollisionInfo> list = features.remove(key);
+        if (list == null) return;
+        featureCount -= list.size();
+        for (CollisionInfo feature : list) {
+            place(feature, false);
+        }
+    }
+
+    /**
+     * Re-indexes gizmo after its geometry changed; does nothing if it is not indexed.
+     */
+    public void update(AbstractGizmo gizmo) {
+        if (features.containsKey(gizmo)) {
+            insert(gizmo);
+        }
+    }
+
+    public void clear() {
+        for (List<CollisionInfo> cell : cells) {
+            cell.clear();
+        }
+        features.clear();
+        featureCount = 0;
+    }
+
+    /**
+     * Collects every feature overlapping the cells touched by the given box, each at most once.
+     *
+     * @param out receives the features; it is not cleared first.
+     */
+    public void query(double minX, double minY, double maxX, double maxY, List<CollisionInfo> out) {
+        int fromX = column(minX), toX = column(maxX);
+        int fromY = row(minY), toY = row(maxY);
+        int stamp = nextQueryStamp();
+        for (int cy = fromY; cy <= toY; cy++) {
+            for (int cx = fromX; cx <= toX; cx++) {
+                List<CollisionInfo> cell = cells[cy * columns + cx];
+                for (int i = 0; i < cell.size(); i++) {
+                    CollisionInfo feature = cell.get(i);
+                    if (feature.queryStamp != stamp) {
+                        feature.queryStamp = stamp;
+                        out.add(feature);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of features indexed, the most a query can report.
+     */
+    public int featureCount() {
+        return featureCount;
+    }
+
+    // a stamp no indexed feature carries; on wrapping around, every feature is unmarked.
+    private int nextQueryStamp() {
+        if (++queryStamp == 0) {
+            for (List<CollisionInfo> list : features.values()) {
+                for (CollisionInfo feature : list) feature.queryStamp = 0;
+            }
+            queryStamp = 1;
+        }
+        return queryStamp;
+    }
+
+    private void place(CollisionInfo feature, boolean add) {
+        double minX, minY, maxX, maxY;
+        if (feature.getLineSegment() != null) {
+            LineSegment lineSegment = feature.getLineSegment();
+            minX = Math.min(lineSegment.p1().x(), lineSegment.p2().x());
+            maxX = Math.max(lineSegment.p1().x(), lineSegment.p2().x());
+            minY = Math.min(lineSegment.p1().y(), lineSegment.p2().y());
+            maxY = Math.max(lineSegment.p1().y(), lineSegment.p2().y());
+        } else {
+            Circle circle = feature.getCircle();
+            minX = circle.getCenter().x() - circle.getRadius();
+            maxX = circle.getCenter().x() + circle.getRadius();
+            minY = circle.getCenter().y() - circle.getRadius();
+            maxY = circle.getCenter().y() + circle.getRadius();
+        }
+        int fromX = column(minX), toX = column(maxX);
+        int fromY = row(minY), toY = row(maxY);
+        for (int cy = fromY; cy <= toY; cy++) {
+            for (int cx = fromX; cx <= toX; cx++) {
+                List<CollisionInfo> cell = cells[cy * columns + cx];
+                if (add) cell.add(feature);
+                else cell.remove(feature);
+            }
+        }
+    }
+
+    private int column(double x) {
+        int c = (int) Math.floor(x / cellSize);
+        return c < 0 ? 0 : (c >= columns ? columns - 1 : c);
+    }
+
+    private int row(double y) {
+        int r = (int) Math.floor(y / cellSize);
+        return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+    }
+}
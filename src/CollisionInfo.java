@@ -17,13 +17,133 @@ public class CollisionInfo {
     private AbstractGizmo gizmo;
     private LineSegment lineSegment;
     private Circle circle;
+    // for a segment merged from the edges of several gizmos: the gizmos in
+    // order along it, and the fraction of its length where each of their parts ends.
+    private AbstractGizmo[] owners;
+    private double[] ownerEnds;
+
+    // the feature as primitives, so impact times and reflections need no allocation:
+    // the endpoints, unit normal and squared length of the segment, or the center and radius of the circle.
+    private double x1, y1, x2, y2;
+    private double nx, ny, lengthSquared;
+    private double radius;
+
+    // the last CollisionGrid query that reported this feature, so a query
+    // reports it once however many of its cells the feature overlaps.
+    int queryStamp;
+
     public CollisionInfo(AbstractGizmo gizmo, LineSegment lineSegment) {
         this.gizmo=gizmo;
         this.lineSegment=lineSegment;
+        x1 = lineSegment.p1().x();
+        y1 = lineSegment.p1().y();
+        x2 = lineSegment.p2().x();
+        y2 = lineSegment.p2().y();
+        lengthSquared = (x2 - x1) * (x2 - x1) + (y2 - y1) * (y2 - y1);
+        double length = Math.sqrt(lengthSquared);
+        nx = length == 0 ? 0 : -(y2 - y1) / length;
+        ny = length == 0 ? 0 : (x2 - x1) / length;
+    }
+
+    /**
+     * A segment merged from the collinear edges of several gizmos that behave
+     * alike, owners[i] owning it up to the fraction ownerEnds[i] of its length.
+     * getGizmo() is owners[0].
+     */
+    public CollisionInfo(LineSegment lineSegment, AbstractGizmo[] owners, double[] ownerEnds) {
+        this(owners[0], lineSegment);
+        this.owners = owners;
+        this.ownerEnds = ownerEnds;
     }
 
     public CollisionInfo(AbstractGizmo gizmo, Circle circle){
         this.gizmo=gizmo;
         this.circle=circle;
+        x1 = circle.getCenter().x();
+        y1 = circle.getCenter().y();
+        radius = circle.getRadius();
+    }
+
+    /**
+     * @return the gizmo owning the part of this feature a ball centered at (x, y)
+     * touches; getGizmo() unless the feature was merged from several gizmos.
+     */
+    public AbstractGizmo getGizmoAt(double x, double y) {
+        if (owners == null) return gizmo;
+        double s = ((x - x1) * (x2 - x1) + (y - y1) * (y2 - y1)) / lengthSquared;
+        for (int i = 0; i < owners.length - 1; i++) {
+            if (s <= ownerEnds[i]) return owners[i];
+        }
+        return owners[owners.length - 1];
+    }
+
+    /**
+     * @return the time until a ball of radius at (x, y) moving with (vx, vy)
+     * hits this feature, as Geometry.timeUntilWallCollision or
+     * Geometry.timeUntilCircleCollision would compute it.
+     */
+    public double timeUntilImpact(double x, double y, double radius, double vx, double vy) {
+        if (lineSegment != null)
+            return timeUntilSegment(x1, y1, x2, y2, nx, ny, lengthSquared, x, y, radius, vx, vy);
+        return timeUntilCircle(x1, y1, this.radius, x, y, radius, vx, vy);
+    }
+
+    /**
+     * @return the unit normal of the surface hit by a ball whose center is at (x, y), in out[0] and out[1].
+     */
+    public void normalAt(double x, double y, double[] out) {
+        if (lineSegment != null) {
+            out[0] = nx;
+            out[1] = ny;
+            return;
+        }
+        double dx = x - x1;
+        double dy = y - y1;
+        double length = Math.sqrt(dx * dx + dy * dy);
+        out[0] = length == 0 ? 0 : dx / length;
+        out[1] = length == 0 ? 0 : dy / length;
+    }
+
+    /**
+     * Same result as GeometryImpl.timeUntilWallCollision for the segment from
+     * (x1, y1) to (x2, y2), computed from the signed distance of the ball to
+     * its line along the unit normal (nx, ny).
+     */
+    static double timeUntilSegment(double x1, double y1, double x2, double y2, double nx, double ny,
+                                   double lengthSquared, double x, double y, double radius, double vx, double vy) {
+        double vn = vx * nx + vy * ny;
+        if (vn == 0) return Double.POSITIVE_INFINITY;
+        double dn = (x - x1) * nx + (y - y1) * ny;
+        double time = Math.min((radius - dn) / vn, (-radius - dn) / vn);
+        double width = x2 - x1;
+        double height = y2 - y1;
+        // fraction along the segment of the point the ball touches.
+        double s = (width * (x + time * vx - x1) + height * (y + time * vy - y1)) / lengthSquared;
+        if (s < 0.0 || s >= 1.0) return Double.POSITIVE_INFINITY;
+        if (time > 0) return time;
+        // overlapping already: hit now if the center moves toward the segment.
+        double impactX = x1 + s * width;
+        double impactY = y1 + s * height;
+        return vx * (x - impactX) + vy * (y - impactY) >= 0 ? Double.POSITIVE_INFINITY : 0;
+    }
+
+    /**
+     * Same result as GeometryImpl.timeUntilCircleCollision for the circle of
+     * radius r centered at (cx, cy).
+     */
+    static double timeUntilCircle(double cx, double cy, double r, double x, double y, double radius,
+                                  double vx, double vy) {
+        double distance = r + radius;
+        double width = x - cx;
+        double height = y - cy;
+        double a = vx * vx + vy * vy;
+        if (a == 0) return Double.POSITIVE_INFINITY;
+        double b = 2.0 * (vx * width + vy * height);
+        double c = width * width + height * height - distance * distance;
+        double discriminant = b * b - 4.0 * a * c;
+        if (discriminant < 0) return Double.POSITIVE_INFINITY;
+        double time = (-b - Math.sqrt(discriminant)) / (2.0 * a);
+        if (time > 0) return time;
+        return width * vx + height * vy >= 0 ? Double.POSITIVE_INFINITY : 0;
     }
 }
@@ -0,0 +1,177 @@
+import physics.Angle;
+import physics.Circle;
+import physics.GeometryImpl;
+import physics.LineSegment;
+import physics.Vect;
+
+/**
+ * Overview: a FastGeometry is the physics.GeometryInterface backend of the
+ * simulation, installed with Geometry.setGeometry().  It computes the same
+ * closed-form impact times as GeometryImpl with the same arithmetic, but
+ * without the intermediate DoublePair and Vect objects, and it does not look
+ * further ahead than its foresight: a ball that cannot reach a feature within
+ * the foresight is rejected with a bounding-box test before any equation is
+ * solved, and impacts found beyond it are reported as never happening.
+ * The engine ties the foresight to the length of its ticks, which is as far
+ * ahead as any caller looks.  The rotating-feature searches are delegated to
+ * a GeometryImpl built with the same foresight.
+ * As physics.Geometry has a single backend for the whole process, so does an
+ * installed FastGeometry have a single foresight, shared by every engine
+ * stepping in it; see SimulationEngine.useGeometry().
+ */
+public class FastGeometry extends GeometryImpl {
+
+    private volatile double foresight;
+    private volatile GeometryImpl bounded;
+
+    /**
+     * @param foresight time (in time units of 100ms) beyond which impacts are not searched for.
+     */
+    public FastGeometry(double foresight) {
+        super(Double.POSITIVE_INFINITY, 15);
+        setForesight(foresight);
+    }
+
+    public double getForesight() {
+        return foresight;
+    }
+
+    public void setForesight(double foresight) {
+        if (!(foresight > 0.0)) throw new IllegalArgumentException("foresight must be positive");
+        this.foresight = foresight;
+        this.bounded = new GeometryImpl(foresight, searchSlices);
+    }
+
+    @Override
+    public double minQuadraticSolution(double a, double b, double c) {
+        if (a == 0.0) {
+            return b == 0.0 ? Double.NaN : -c / b;
+        }
+        double discriminant = (b * b) - (4.0 * a * c);
+        if (discriminant < 0.0) return Double.NaN;
+        double sqrt = Math.sqrt(discriminant);
+        double twoA = 2.0 * a;
+        return a > 0 ? (-b - sqrt) / twoA : (-b + sqrt) / twoA;
+    }
+
+    @Override
+    public double timeUntilWallCollision(LineSegment line, Circle ball, Vect velocity) {
+        double x1 = line.p1().x(), y1 = line.p1().y(), x2 = line.p2().x(), y2 = line.p2().y();
+        double a = ball.getCenter().x(), b = ball.getCenter().y();
+        double radius = ball.getRadius();
+        double va = velocity.x(), vb = velocity.y();
+        if (!reachable(a, b, radius, va, vb, Math.min(x1, x2), Math.min(y1, y2),
+                Math.max(x1, x2), Math.max(y1, y2))) return Double.POSITIVE_INFINITY;
+
+        double width = x2 - x1;
+        double height = y2 - y1;
+        double F = ((va * height) - (vb * width));
+        double G = ((a * height) - (b * width) + ((x2 * y1) - (x1 * y2)));
+        double H = ((width * width) + (height * height));
+        double Cprime = G * G - (radius * radius * H);
+        double collisionTime = minQuadraticSolution(F * F, 2.0 * F * G, Cprime);
+        if (Double.isNaN(collisionTime) || collisionTime > foresight) return Double.POSITIVE_INFINITY;
+
+        double cX = a + (collisionTime * va);
+        double cY = b + (collisionTime * vb);
+        double minS = ((width * (cX - x1)) + (height * (cY - y1))) / H;
+        if (!((0.0 <= minS) && (minS < 1.0))) return Double.POSITIVE_INFINITY;
+        if (collisionTime > 0) return collisionTime;
+        // overlapping already: hit now if the center moves toward the segment.
+        double impactX = x1 + minS * width;
+        double impactY = y1 + minS * height;
+        return va * (a - impactX) + vb * (b - impactY) >= 0 ? Double.POSITIVE_INFINITY : 0;
+    }
+
+    @Override
+    public double timeUntilCircleCollision(Circle circle, Circle ball, Vect velocity) {
+        double x = circle.getCenter().x(), y = circle.getCenter().y();
+        double a = ball.getCenter().x(), b = ball.getCenter().y();
+        double va = velocity.x(), vb = velocity.y();
+        double distance = circle.getRadius() + ball.getRadius();
+        if (!reachable(a, b, distance, va, vb, x, y, x, y)) return Double.POSITIVE_INFINITY;
+
+        double width = a - x;
+        double height = b - y;
+        double A = ((va * va) + (vb * vb));
+        double B = 2.0 * ((va * width) + (vb * height));
+        double C = (width * width) + (height * height) - (distance * distance);
+        double ans = minQuadraticSolution(A, B, C);
+        if (Double.isNaN(ans) || ans > foresight) return Double.POSITIVE_INFINITY;
+        if (ans > 0) return ans;
+        return width * va + height * vb >= 0 ? Double.POSITIVE_INFINITY : 0;
+    }
+
+    @Override
+    public double timeUntilBallBallCollision(Circle ball1, Vect vel1, Circle ball2, Vect vel2) {
+        double sizes = ball1.getRadius() + ball2.getRadius();
+        double dx = ball1.getCenter().x() - ball2.getCenter().x();
+        double dy = ball1.getCenter().y() - ball2.getCenter().y();
+        double dvx = vel1.x() - vel2.x();
+        double dvy = vel1.y() - vel2.y();
+        double gap = dx * dx + dy * dy - sizes * sizes;
+        if (gap <= 0.0) {
+            return dvx * dx + dvy * dy < 0.0 ? 0.0 : Double.POSITIVE_INFINITY;
+        }
+        // relative to ball2, ball1 has to close the gap within the foresight.
+        if (!reachable(dx, dy, sizes, dvx, dvy, 0, 0, 0, 0)) return Double.POSITIVE_INFINITY;
+        double t = minQuadraticSolution(dvx * dvx + dvy * dvy, 2 * dx * dvx + 2 * dy * dvy, gap);
+        return t > 0 && t <= foresight ? t : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Reflects velocity about the normal of line, instead of through the angles
+     * of the line and the velocity.
+     */
+    @Override
+    public Vect reflectWall(LineSegment line, Vect velocity) {
+        double width = line.p2().x() - line.p1().x();
+        double height = line.p2().y() - line.p1().y();
+        double lengthSquared = width * width + height * height;
+        if (lengthSquared == 0.0 || (velocity.x() == 0.0 && velocity.y() == 0.0)) return velocity;
+        // v - 2 (v.n) n for the unit normal n = (-height, width) / length.
+        double scale = 2 * (velocity.y() * width - velocity.x() * height) / lengthSquared;
+        return new Vect(velocity.x() + scale * height, velocity.y() - scale * width);
+    }
+
+    @Override
+    public Vect reflectCircle(Vect circle, Vect ball, Vect velocity) {
+        double nx = ball.x() - circle.x();
+        double ny = ball.y() - circle.y();
+        double lengthSquared = nx * nx + ny * ny;
+        if (lengthSquared == 0.0 || (velocity.x() == 0.0 && velocity.y() == 0.0)) return velocity;
+        double scale = 2 * (velocity.x() * nx + velocity.y() * ny) / lengthSquared;
+        return new Vect(velocity.x() - scale * nx, velocity.y() - scale * ny);
+    }
+
+    @Override
+    public Vect rotateAround(Vect point, Vect cor, Angle a) {
+        double x = point.x() - cor.x();
+        double y = point.y() - cor.y();
+        return new Vect(cor.x() + x * a.cos() - y * a.sin(), cor.y() + x * a.sin() + y * a.cos());
+    }
+
+    @Override
+    public double timeUntilRotatingWallCollision(LineSegment line, Vect center, double angularVelocity,
+                                                 Circle ball, Vect velocity) {
+        return bounded.timeUntilRotatingWallCollision(line, center, angularVelocity, ball, velocity);
+    }
+
+    @Override
+    public double timeUntilRotatingCircleCollision(Circle circle, Vect center, double angularVelocity,
+                                                   Circle ball, Vect velocity) {
+        return bounded.timeUntilRotatingCircleCollision(circle, center, angularVelocity, ball, velocity);
+    }
+
+    /**
+     * @return false if a ball of radius at (x, y) moving with (vx, vy) cannot
+     * touch the box from (minX, minY) to (maxX, maxY) within the foresight.
+     */
+    private boolean reachable(double x, double y, double radius, double vx, double vy,
+                              double minX, double minY, double maxX, double maxY) {
+        double reach = radius + Math.sqrt(vx * vx + vy * vy) * foresight;
+        double dx = Math.max(0, Math.max(minX - x, x - maxX));
+        double dy = Math.max(0, Math.max(minY - y, y - maxY));
+        return dx * dx + dy * dy <= reach * reach;
+    }
+}
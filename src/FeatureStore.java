@@ -0,0 +1,269 @@
+import physics.Circle;
+import physics.LineSegment;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Overview: a FeatureStore is a packed copy of the collision features of every
+ * gizmo of a SimulationEngine, laid out as parallel primitive arrays: segment
+ * endpoints with their bounding boxes, precomputed unit normals and lengths,
+ * corner centers and radii, and the index of the owning gizmo.  The features
+ * of one gizmo are contiguous, so a gizmo whose geometry changed without
+ * changing its number of features is rewritten in place.
+ * earliest() scans the arrays without allocating, as an alternative to
+ * BouncingBall.detectCollision(CollisionGrid) over physics.LineSegment and
+ * physics.Circle objects; the two give the same impact times as GeometryImpl.
+ */
+public class FeatureStore {
+
+    private final SimulationEngine engine;
+
+    // owners[k] is the k-th gizmo of the engine, segmentStart[k] and
+    // cornerStart[k] the index of its first segment and first corner.
+    private AbstractGizmo[] owners = new AbstractGizmo[0];
+    private int[] segmentStart = new int[1];
+    private int[] cornerStart = new int[1];
+    private final Map<AbstractGizmo, Integer> ownerIndex = new IdentityHashMap<>();
+
+    private int segmentCount;
+    private double[] x1 = new double[0], y1 = new double[0], x2 = new double[0], y2 = new double[0];
+    private double[] segMinX = new double[0], segMinY = new double[0], segMaxX = new double[0], segMaxY = new double[0];
+    // unit normal, length and squared length of every segment.
+    private double[] nx = new double[0], ny = new double[0], length = new double[0], lengthSquared = new double[0];
+    private int[] segmentOwner = new int[0];
+    private CollisionInfo[] segmentInfo = new CollisionInfo[0];
+
+    private int cornerCount;
+    private double[] cx = new double[0], cy = new double[0], cr = new double[0];
+    private int[] cornerOwner = new int[0];
+    private CollisionInfo[] cornerInfo = new CollisionInfo[0];
+
+    // true when the layout no longer matches the gizmo list and must be rebuilt.
+    private boolean dirty = true;
+
+    // time of impact of the feature returned by the last call to earliest(), and
+    // the number of features that call tested.
+    private double lastTime;
+    private int lastTested;
+
+    public FeatureStore(SimulationEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Called when gizmos are added or removed; the store is rebuilt on its next use.
+     */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * @modifies this
+     * @effects rewrites the features of gizmo in place if their number did not
+     * change, otherwise schedules a full rebuild.
+     */
+    public void update(AbstractGizmo gizmo) {
+        if (dirty) return;
+        Integer k = ownerIndex.get(gizmo);
+        if (k == null || engine.isCompiled(gizmo)) return;
+        List<LineSegment> lines = gizmo.getLines();
+        List<Circle> corners = gizmo.getCorners();
+        if (segmentStart[k + 1] - segmentStart[k] != lines.size()
+                || cornerStart[k + 1] - cornerStart[k] != corners.size()) {
+            dirty = true;
+            return;
+        }
+        write(gizmo, k, segmentStart[k], cornerStart[k]);
+    }
+
+    /**
+     * Finds the feature a ball at (x, y) moving with (vx, vy) hits first, within maxTime.
+     *
+     * @return the feature, or null if there is none; its time of impact is then
+     * available from getLastTime().
+     */
+    public CollisionInfo earliest(double x, double y, double radius, double vx, double vy, double maxTime) {
+        if (dirty) rebuild();
+        double boxMinX = Math.min(x, x + vx * maxTime) - radius;
+        double boxMaxX = Math.max(x, x + vx * maxTime) + radius;
+        double boxMinY = Math.min(y, y + vy * maxTime) - radius;
+        double boxMaxY = Math.max(y, y + vy * maxTime) + radius;
+        CollisionInfo earliest = null;
+        double earliestTime = maxTime;
+        int tested = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            if (segMaxX[i] < boxMinX || segMinX[i] > boxMaxX
+                    || segMaxY[i] < boxMinY || segMinY[i] > boxMaxY) continue;
+            tested++;
+            double time = CollisionInfo.timeUntilSegment(x1[i], y1[i], x2[i], y2[i], nx[i], ny[i],
+                    lengthSquared[i], x, y, radius, vx, vy);
+            if (time <= earliestTime) {
+                earliestTime = time;
+                earliest = segmentInfo[i];
+            }
+        }
+        for (int i = 0; i < cornerCount; i++) {
+            double reach = cr[i];
+            if (cx[i] + reach < boxMinX || cx[i] - reach > boxMaxX
+                    || cy[i] + reach < boxMinY || cy[i] - reach > boxMaxY) continue;
+            tested++;
+            double time = CollisionInfo.timeUntilCircle(cx[i], cy[i], cr[i], x, y, radius, vx, vy);
+            if (time <= earliestTime) {
+                earliestTime = time;
+                earliest = cornerInfo[i];
+            }
+        }
+        lastTime = earliest == null ? Double.POSITIVE_INFINITY : earliestTime;
+        lastTested = tested;
+        return earliest;
+    }
+
+    public double getLastTime() {
+        return lastTime;
+    }
+
+    /**
+     * @return the number of features the last call to earliest() computed a time of impact with.
+     */
+    public int getLastTested() {
+        return lastTested;
+    }
+
+    public int getSegmentCount() {
+        if (dirty) rebuild();
+        return segmentCount;
+    }
+
+    public int getCornerCount() {
+        if (dirty) rebuild();
+        return cornerCount;
+    }
+
+    /**
+     * @return the gizmo owning segment i.
+     */
+    public AbstractGizmo getSegmentOwner(int i) {
+        return owners[segmentOwner[i]];
+    }
+
+    /**
+     * @return the gizmo owning corner i.
+     */
+    public AbstractGizmo getCornerOwner(int i) {
+        return owners[cornerOwner[i]];
+    }
+
+    private void rebuild() {
+        List<AbstractGizmo> gizmos = engine.getGizmoList();
+        List<CollisionInfo> compiled = engine.getCompiledFeatures();
+        int n = gizmos.size();
+        int segments = 0, corners = 0;
+        for (AbstractGizmo gizmo : gizmos) {
+            if (engine.isCompiled(gizmo)) continue;
+            segments += gizmo.getLines().size();
+            corners += gizmo.getCorners().size();
+        }
+        for (CollisionInfo feature : compiled) {
+            if (feature.getLineSegment() != null) segments++;
+            else corners++;
+        }
+        ensureCapacity(n, segments, corners);
+        ownerIndex.clear();
+        segmentCount = 0;
+        cornerCount = 0;
+        for (int k = 0; k < n; k++) {
+            AbstractGizmo gizmo = gizmos.get(k);
+            owners[k] = gizmo;
+            ownerIndex.put(gizmo, k);
+            segmentStart[k] = segmentCount;
+            cornerStart[k] = cornerCount;
+            // the features of a compiled gizmo are among the merged ones below.
+            if (engine.isCompiled(gizmo)) continue;
+            write(gizmo, k, segmentCount, cornerCount);
+            segmentCount += gizmo.getLines().size();
+            cornerCount += gizmo.getCorners().size();
+        }
+        segmentStart[n] = segmentCount;
+        cornerStart[n] = cornerCount;
+        for (CollisionInfo feature : compiled) {
+            int k = ownerIndex.get(feature.getGizmo());
+            if (feature.getLineSegment() != null) writeSegment(segmentCount++, feature.getLineSegment(), k, feature);
+            else writeCorner(cornerCount++, feature.getCircle(), k, feature);
+        }
+        Arrays.fill(owners, n, owners.length, null);
+        dirty = false;
+    }
+
+    /**
+     * Copies the features of gizmo, the k-th owner, to the slots starting at segment and corner.
+     */
+    private void write(AbstractGizmo gizmo, int k, int segment, int corner) {
+        for (LineSegment line : gizmo.getLines()) {
+            writeSegment(segment++, line, k, new CollisionInfo(gizmo, line));
+        }
+        for (Circle circle : gizmo.getCorners()) {
+            writeCorner(corner++, circle, k, new CollisionInfo(gizmo, circle));
+        }
+    }
+
+    private void writeSegment(int i, LineSegment line, int k, CollisionInfo info) {
+        x1[i] = line.p1().x();
+        y1[i] = line.p1().y();
+        x2[i] = line.p2().x();
+        y2[i] = line.p2().y();
+        segMinX[i] = Math.min(x1[i], x2[i]);
+        segMinY[i] = Math.min(y1[i], y2[i]);
+        segMaxX[i] = Math.max(x1[i], x2[i]);
+        segMaxY[i] = Math.max(y1[i], y2[i]);
+        double width = x2[i] - x1[i];
+        double height = y2[i] - y1[i];
+        lengthSquared[i] = width * width + height * height;
+        length[i] = Math.sqrt(lengthSquared[i]);
+        nx[i] = length[i] == 0 ? 0 : -height / length[i];
+        ny[i] = length[i] == 0 ? 0 : width / length[i];
+        segmentOwner[i] = k;
+        segmentInfo[i] = info;
+    }
+
+    private void writeCorner(int i, Circle circle, int k, CollisionInfo info) {
+        cx[i] = circle.getCenter().x();
+        cy[i] = circle.getCenter().y();
+        cr[i] = circle.getRadius();
+        cornerOwner[i] = k;
+        cornerInfo[i] = info;
+    }
+
+    private void ensureCapacity(int gizmos, int segments, int corners) {
+        if (owners.length < gizmos) {
+            owners = new AbstractGizmo[gizmos];
+            segmentStart = new int[gizmos + 1];
+            cornerStart = new int[gizmos + 1];
+        }
+        if (x1.length < segments) {
+            x1 = new double[segments];
+            y1 = new double[segments];
+            x2 = new double[segments];
+            y2 = new double[segments];
+            segMinX = new double[segments];
+            segMinY = new double[segments];
+            segMaxX = new double[segments];
+            segMaxY = new double[segments];
+            nx = new double[segments];
+            ny = new double[segments];
+            length = new double[segments];
+            lengthSquared = new double[segments];
+            segmentOwner = new int[segments];
+            segmentInfo = new CollisionInfo[segments];
+        }
+        if (cx.length < corners) {
+            cx = new double[corners];
+            cy = new double[corners];
+            cr = new double[corners];
+            cornerOwner = new int[corners];
+            cornerInfo = new CollisionInfo[corners];
+        }
+    }
+}
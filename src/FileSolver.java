@@ -2,8 +2,8 @@ import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.io.*;
-import java.rmi.UnexpectedException;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 public class FileSolver {
     private AnimationWindow animationWindow;
@@ -23,11 +23,17 @@ public class FileSolver {
         JFileChooser jfc=new JFileChooser();
 
         FileNameExtensionFilter filter = new FileNameExtensionFilter("gizmofile(*.gizmo)", "gizmo");
+        FileNameExtensionFilter binaryFilter = binaryFilter();
+        jfc.addChoosableFileFilter(binaryFilter);
         jfc.setFileFilter(filter);
         int option=jfc.showSaveDialog(animationWindow);
 
         if(option==JFileChooser.APPROVE_OPTION) {
             File file = jfc.getSelectedFile();
+            if(jfc.getFileFilter()==binaryFilter || BinaryBoard.isBinary(file)) {
+                saveBinary(file);
+                return;
+            }
 
             String fname = jfc.getName(file);
             if(fname.indexOf(".gizmo")==-1) {
@@ -35,15 +41,7 @@ public class FileSolver {
             }
             List<AbstractGizmo> list = animationWindow.getGizmoList();
             try (FileWriter fw = new FileWriter(file)) {
-                BufferedWriter bw = new BufferedWriter(fw);
-                for (AbstractGizmo abstractGizmo : list) {
-                    bw.write("x=" + abstractGizmo.x + " y=" + abstractGizmo.y
-                            + " r=" + abstractGizmo.r + " crashMove=" + abstractGizmo.crashMove + " degree=" + abstractGizmo.degree
-                            + " class=" + abstractGizmo.getClass().getName());
-                    bw.newLine();
-                    bw.flush();
-                }
-                fw.flush();
+                write(fw, list);
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -54,42 +52,118 @@ public class FileSolver {
         }
     }
 
+    /**
+     * @modifies out
+     * @effects writes gizmos to out as a text board, one gizmo per line, in
+     * the format BoardReader reads.
+     */
+    static void write(Writer out, List<? extends AbstractGizmo> gizmos) throws IOException {
+        BufferedWriter bw = new BufferedWriter(out);
+        for (AbstractGizmo abstractGizmo : gizmos) {
+            bw.write("x=" + abstractGizmo.x + " y=" + abstractGizmo.y
+                    + " r=" + abstractGizmo.r + " crashMove=" + abstractGizmo.crashMove + " degree=" + abstractGizmo.degree
+                    + " class=" + abstractGizmo.getClass().getName());
+            bw.newLine();
+        }
+        bw.flush();
+    }
+
+    // binary boards carry a checksum instead of being made read-only.
+    private void saveBinary(File file) {
+        if(!BinaryBoard.isBinary(file)) {
+            file = new File(file.getParentFile(), file.getName() + "." + BinaryBoard.EXTENSION);
+        }
+        try {
+            BinaryBoard.write(file, animationWindow.getGizmoList());
+        } catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(animationWindow,"cannot save the board: " + e.getMessage());
+        }
+    }
+
+    private static FileNameExtensionFilter binaryFilter() {
+        return new FileNameExtensionFilter("binary gizmofile(*." + BinaryBoard.EXTENSION + ")", BinaryBoard.EXTENSION);
+    }
+
+    public void saveRecording(Recording recording) {
+        JFileChooser jfc=new JFileChooser();
+        FileNameExtensionFilter filter = new FileNameExtensionFilter("recording(*." + Recording.EXTENSION + ")", Recording.EXTENSION);
+        jfc.setFileFilter(filter);
+        if(jfc.showSaveDialog(animationWindow)!=JFileChooser.APPROVE_OPTION) {
+            JOptionPane.showMessageDialog(animationWindow,"not save");
+            return;
+        }
+        File file = jfc.getSelectedFile();
+        if(!file.getName().endsWith("." + Recording.EXTENSION)) {
+            file = new File(file.getParentFile(), file.getName() + "." + Recording.EXTENSION);
+        }
+        try {
+            recording.save(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(animationWindow,"cannot save the recording: " + e.getMessage());
+        }
+    }
+
+    public void readRecording() {
+        JFileChooser jfc=new JFileChooser();
+        FileNameExtensionFilter filter = new FileNameExtensionFilter("recording(*." + Recording.EXTENSION + ")", Recording.EXTENSION);
+        jfc.setFileFilter(filter);
+        if(jfc.showOpenDialog(animationWindow)!=JFileChooser.APPROVE_OPTION) return;
+        try {
+            animationWindow.replay(Recording.load(jfc.getSelectedFile()));
+        } catch (IOException | IllegalStateException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(animationWindow,"cannot replay this file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Asks for a board file, text or binary, and loads it: the file is parsed
+     * and its gizmos built on a background thread, then added to the window at
+     * once.  A binary board is checked by its checksum, a text board by being
+     * read-only as save() leaves it.
+     */
     public void read() {
         removeAll();
         JFileChooser jfc=new JFileChooser();
         FileNameExtensionFilter filter = new FileNameExtensionFilter("gizmofile(*.gizmo)", "gizmo");
+        jfc.addChoosableFileFilter(binaryFilter());
         jfc.setFileFilter(filter);
-        jfc.showOpenDialog(animationWindow);
+        if(jfc.showOpenDialog(animationWindow)!=JFileChooser.APPROVE_OPTION) return;
         File file=jfc.getSelectedFile();
-        if(file.canWrite()==true){
+        boolean binary = BinaryBoard.isBinary(file);
+        if(!binary && file.canWrite()==true){
             JOptionPane.showMessageDialog(animationWindow,"this file is broken, cannot read it");
             return;
         }
         removeAll();
-        try(FileReader fr=new FileReader(file)){
-            // check this file
-            BufferedReader br=new BufferedReader(fr);
-            String line;
-            while((line=br.readLine())!=null){
-                String[] splitStr=line.split(" ");
-                int x=0,y=0,r=0,degree=0;
-                boolean crashMove=false;
-                Class t=Class.forName("AbstractGizmo");
-                for(String str:splitStr){
-                    if(str.startsWith("x=")) x=Integer.parseInt(splitStr[0].substring(2));
-                    if(str.startsWith("y=")) y=Integer.parseInt(splitStr[1].substring(2));
-                    if(str.startsWith("r=")) r=Integer.parseInt(splitStr[2].substring(2));
-                    if(str.startsWith("crashMove=")) crashMove=Boolean.parseBoolean(splitStr[3].substring(10));
-                    if(str.startsWith("degree=")) degree=Integer.parseInt(splitStr[4].substring(7));
-                    if(str.startsWith("class="))  t=Class.forName( splitStr[5].substring(6));
-                    //System.out.println(x+" "+y+r+crashMove+degree+t);
-                }
-                if(t==AbstractGizmo.class) throw new UnexpectedException("check!");
-                animationWindow.addGizmo(x,y,r,degree,crashMove,t);
+        SimulationEvents.BoardLoad event = new SimulationEvents.BoardLoad();
+        event.begin();
+        SimulationEngine engine = animationWindow.getEngine();
+        new SwingWorker<List<AbstractGizmo>, Void>() {
+            @Override
+            protected List<AbstractGizmo> doInBackground() throws IOException {
+                return binary ? BinaryBoard.read(file, engine) : BoardReader.readAll(file, engine);
             }
-        }catch(Exception e){
-            e.printStackTrace();
-        }
 
+            @Override
+            protected void done() {
+                try {
+                    List<AbstractGizmo> gizmos = get();
+                    animationWindow.addGizmos(gizmos);
+                    event.gizmos = gizmos.size();
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    cause.printStackTrace();
+                    event.error = cause.toString();
+                    JOptionPane.showMessageDialog(animationWindow,"cannot read this file: " + cause.getMessage());
+                }
+                if (event.shouldCommit()) {
+                    event.file = file.getPath();
+                    event.commit();
+                }
+            }
+        }.execute();
     }
 }
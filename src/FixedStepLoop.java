@@ -0,0 +1,86 @@
+/**
+ * Overview: a FixedStepLoop turns the irregular wall-clock time between the
+ * frames of a window into a whole number of simulation ticks of a fixed
+ * length, measured with System.nanoTime().  Time left over from a frame is
+ * accumulated into the next, so the simulation keeps pace with the clock
+ * however late or early frames come, and always advances by the same steps.
+ * A frame never runs more than maxTicksPerFrame ticks: when the simulation
+ * cannot keep up (or the window was stalled), the time beyond that is dropped
+ * instead of piling up into ever longer frames.
+ * getAlpha() tells how far the clock is between the last tick and the next,
+ * to draw moving objects interpolated between their last two states.
+ */
+public class FixedStepLoop {
+
+    private final double tickMillis;
+    private final long tickNanos;
+    private final int maxTicksPerFrame;
+
+    // time of the previous frame, or -1 before the first one.
+    private long last = -1;
+    // clock time not yet simulated.
+    private long accumulator;
+    private long droppedNanos;
+
+    /**
+     * @param tickMillis       length of a simulation tick in milliseconds
+     * @param maxTicksPerFrame most ticks run for one frame
+     */
+    public FixedStepLoop(double tickMillis, int maxTicksPerFrame) {
+        if (!(tickMillis > 0) || maxTicksPerFrame < 1)
+            throw new IllegalArgumentException("tick length and ticks per frame must be positive");
+        this.tickMillis = tickMillis;
+        this.tickNanos = Math.round(tickMillis * 1e6);
+        this.maxTicksPerFrame = maxTicksPerFrame;
+    }
+
+    public double getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * @modifies this
+     * @effects accounts for the clock time since the previous frame.
+     * @param now the time of this frame, from System.nanoTime()
+     * @return the number of ticks to run for this frame.
+     */
+    public int advance(long now) {
+        if (last < 0) last = now;
+        accumulator += now - last;
+        last = now;
+        int ticks = (int) Math.min(maxTicksPerFrame, accumulator / tickNanos);
+        accumulator -= ticks * tickNanos;
+        if (ticks == maxTicksPerFrame && accumulator >= tickNanos) {
+            // too far behind to catch up: keep the fraction of a tick, drop the rest.
+            long keep = accumulator % tickNanos;
+            droppedNanos += accumulator - keep;
+            accumulator = keep;
+        }
+        return ticks;
+    }
+
+    /**
+     * @return the fraction of a tick the clock is past the last tick run, in [0, 1).
+     */
+    public double getAlpha() {
+        return (double) accumulator / tickNanos;
+    }
+
+    /**
+     * @return the clock time dropped so far because frames needed more than
+     * maxTicksPerFrame ticks, in milliseconds.
+     */
+    public double getDroppedMillis() {
+        return droppedNanos / 1e6;
+    }
+
+    /**
+     * @modifies this
+     * @effects forgets the time of the previous frame and any time left over,
+     * for when the loop is paused.
+     */
+    public void reset() {
+        last = -1;
+        accumulator = 0;
+    }
+}
@@ -4,43 +4,218 @@ import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
+import java.util.Collections;
 
+/**
+ * Overview: a Flipper turns about its pivot between its rest position and
+ * MAX_DEGREE at ANGULAR_SPEED, toward the flipped position while flip() is in
+ * effect and back after unflip().  It is moved by advance() once per tick of
+ * the simulation, not by the key events themselves, so it turns at the same
+ * speed whatever the keyboard repeat rate.  Its geometry for every whole
+ * degree of the turn is computed once per placement in a pose table.
+ */
 public abstract class Flipper extends AbstractGizmo {
     public int getRollerR() {
         return rollerR;
     }
 
-    protected int rollerR=animationWindow.getSizePerUnit()/10;
+    // how far a flipper turns, in degrees, and how fast, in degrees per time unit of 100ms.
+    public static final int MAX_DEGREE = 90;
+    public static final double ANGULAR_SPEED = 108;
+
+    protected int rollerR=SimulationEngine.getSizePerUnit()/10;
     protected Color rollerColor=Color.BLACK;
     protected int rotatingDegree;
     protected boolean flipMode;
-    public Flipper(AnimationWindow animationWindow) {
-        super(animationWindow);
+
+    // exact turn of the flipper, rotatingDegree being it rounded to a pose.
+    private double turn;
+
+    // poseLines[d] and poseCorners[d] are the geometry turned by d degrees,
+    // for the x, y, r and degree they were built at.
+    private LineSegment[][] poseLines;
+    private Circle[][] poseCorners;
+    private Vect pivot;
+    private int poseX, poseY, poseR, poseDegree;
+
+    public Flipper(SimulationEngine engine) {
+        super(engine);
         isTrack=false;
         if(isTrack()) color=Color.BLACK;
         else color=Color.GREEN;
-        makeFlipper();
         rotatingDegree=0;
         flipMode=false;
     }
-    public Flipper(int x, int y, int r, int degree, boolean crashMove,  AnimationWindow animationWindow) {
-        super(x,y,r,degree,crashMove,animationWindow);
+    public Flipper(int x, int y, int r, int degree, boolean crashMove,  SimulationEngine engine) {
+        super(x,y,r,degree,crashMove,engine);
         isTrack=false;
         if(isTrack()) color=Color.BLACK;
         else color=Color.LIGHT_GRAY;
-        makeFlipper();
         rotatingDegree=0;
         flipMode=false;
     }
 
+    // flippers keep their color as trackers.
+    @Override
+    void initTracker(boolean isTrack) {
+        setIsTrack(isTrack);
+    }
+
+    /**
+     * @modifies this
+     * @effects builds lines and corners of the flipper at rest.
+     */
     public abstract void makeFlipper() ;
 
+    /**
+     * @return the point the flipper turns about.
+     */
+    protected abstract Vect makePivot();
 
+    /**
+     * @return 1 if flipping turns the flipper from the positive x-axis toward
+     * the positive y-axis (clockwise on screen), -1 otherwise.
+     */
+    protected abstract int direction();
+
+    @Override
+    protected void makeGeometry() {
+        if (poseLines == null || poseX != x || poseY != y || poseR != r || poseDegree != degree) {
+            makePoses();
+        }
+        lines.clear();
+        corners.clear();
+        Collections.addAll(lines, poseLines[rotatingDegree]);
+        Collections.addAll(corners, poseCorners[rotatingDegree]);
+    }
+
+    /**
+     * Fills the pose table from the rest position built by makeFlipper().
+     */
+    private void makePoses() {
+        makeFlipper();
+        poseX = x;
+        poseY = y;
+        poseR = r;
+        poseDegree = degree;
+        pivot = makePivot();
+        poseLines = new LineSegment[MAX_DEGREE + 1][];
+        poseCorners = new Circle[MAX_DEGREE + 1][];
+        double px = pivot.x(), py = pivot.y();
+        for (int d = 0; d <= MAX_DEGREE; d++) {
+            double radians = Math.toRadians(direction() * d);
+            double cos = Math.cos(radians), sin = Math.sin(radians);
+            LineSegment[] turnedLines = new LineSegment[lines.size()];
+            for (int i = 0; i < turnedLines.length; i++) {
+                LineSegment line = lines.get(i);
+                turnedLines[i] = new LineSegment(
+                        px + (line.p1().x() - px) * cos - (line.p1().y() - py) * sin,
+                        py + (line.p1().x() - px) * sin + (line.p1().y() - py) * cos,
+                        px + (line.p2().x() - px) * cos - (line.p2().y() - py) * sin,
+                        py + (line.p2().x() - px) * sin + (line.p2().y() - py) * cos);
+            }
+            Circle[] turnedCorners = new Circle[corners.size()];
+            for (int i = 0; i < turnedCorners.length; i++) {
+                Circle corner = corners.get(i);
+                double cx = corner.getCenter().x() - px, cy = corner.getCenter().y() - py;
+                turnedCorners[i] = new Circle(px + cx * cos - cy * sin, py + cx * sin + cy * cos,
+                        corner.getRadius());
+            }
+            poseLines[d] = turnedLines;
+            poseCorners[d] = turnedCorners;
+        }
+    }
+
+    /**
+     * @return the point the flipper turns about.
+     */
+    public Vect getPivot() {
+        validateGeometry();
+        return pivot;
+    }
+
+    /**
+     * @return the angular velocity of the flipper in radians per time unit,
+     * positive from the positive x-axis toward the positive y-axis as
+     * Geometry.timeUntilRotatingWallCollision expects, or 0 while it is not moving.
+     */
+    public double getAngularVelocity() {
+        double target = flipMode ? MAX_DEGREE : 0;
+        if (turn == target) return 0;
+        return (flipMode ? 1 : -1) * direction() * Math.toRadians(ANGULAR_SPEED);
+    }
+
+    /**
+     * @return false if a ball of radius at (x, y) moving with speed cannot touch
+     * the flipper, whatever its pose, within time.
+     */
+    public boolean canReach(double x, double y, double radius, double speed, double time) {
+        Vect pivot = getPivot();
+        double reach = 2 * r + rollerR + radius + speed * time;
+        double dx = x - pivot.x(), dy = y - pivot.y();
+        return dx * dx + dy * dy <= reach * reach;
+    }
+
+    /**
+     * @modifies this
+     * @effects turns the flipper for time (in time units of 100ms) toward
+     * MAX_DEGREE if it is flipped and toward its rest position otherwise.
+     * @return true if its pose changed.
+     */
+    public boolean advance(double time) {
+        double target = flipMode ? MAX_DEGREE : 0;
+        if (turn == target) return false;
+        turn = flipMode ? Math.min(target, turn + ANGULAR_SPEED * time)
+                : Math.max(target, turn - ANGULAR_SPEED * time);
+        int pose = (int) Math.round(turn);
+        if (pose == rotatingDegree) return false;
+        rotatingDegree = pose;
+        poseChanged();
+        return true;
+    }
+
+    /**
+     * @return how far the flipper is turned, in degrees from its rest position.
+     */
+    public double getTurn() {
+        return turn;
+    }
+
+    /**
+     * @return true if the flipper is turning, or turned, toward MAX_DEGREE.
+     */
+    public boolean isFlipped() {
+        return flipMode;
+    }
+
+    /**
+     * @modifies this
+     * @effects turns the flipper to turn degrees from its rest position, heading
+     * toward MAX_DEGREE if flipped and toward its rest position otherwise.
+     */
+    public void setPose(double turn, boolean flipped) {
+        this.turn = Math.max(0, Math.min(MAX_DEGREE, turn));
+        flipMode = flipped;
+        int pose = (int) Math.round(this.turn);
+        if (pose == rotatingDegree) return;
+        rotatingDegree = pose;
+        poseChanged();
+    }
 
     @Override
     public abstract void paint(Graphics g);
 
-    public abstract void flip();
+    /**
+     * @effects starts turning the flipper toward MAX_DEGREE from the next tick on.
+     */
+    public void flip() {
+        flipMode = true;
+    }
 
-    public abstract void unflip();
+    /**
+     * @effects starts turning the flipper back to its rest position from the next tick on.
+     */
+    public void unflip() {
+        flipMode = false;
+    }
 }
@@ -7,18 +7,22 @@ import java.awt.geom.Line2D;
 
 public class LTypeGizmo extends AbstractGizmo {
 
-    public LTypeGizmo(AnimationWindow animationWindow) {
-        super(animationWindow);
+    public LTypeGizmo(SimulationEngine engine) {
+        super(engine);
         if(isTrack()) color=Color.BLACK;
         else color=Color.YELLOW;
-        makeSquare();
     }
-    public LTypeGizmo(int x, int y, int r, int degree, boolean crashMove, AnimationWindow animationWindow) {
-        super(x,y,r,degree,crashMove,animationWindow);
+    public LTypeGizmo(int x, int y, int r, int degree, boolean crashMove, SimulationEngine engine) {
+        super(x,y,r,degree,crashMove,engine);
         if(isTrack()) color=Color.BLACK;
         else color=Color.YELLOW;
+    }
+
+    @Override
+    protected void makeGeometry() {
         makeSquare();
     }
+
     public void makeSquare(){
         lines.clear();
         corners.clear();
@@ -40,21 +44,34 @@ public class LTypeGizmo extends AbstractGizmo {
     }
 
 
+    /**
+     * @return the boxes of the two arms of the L, turned as it is; the whole
+     * square of the gizmo if it is not turned by a multiple of 90 degrees.
+     */
     @Override
     public Rectangle[] boundingBoxes() {
+        if (Math.floorMod(degree, 90) != 0) return super.boundingBoxes();
         Rectangle[] rectangles=new Rectangle[2];
-        rectangles[0]=new Rectangle(x-r,y-r,r+animationWindow.getSizePerUnit()/2,r-animationWindow.getSizePerUnit()/2);
-        rectangles[1]=new Rectangle(x-r,y-animationWindow.getSizePerUnit()/2,2*r,r+animationWindow.getSizePerUnit()/2);
+        rectangles[0]=new Rectangle(x-r,y-r,r+SimulationEngine.getSizePerUnit()/2,r-SimulationEngine.getSizePerUnit()/2);
+        rectangles[1]=new Rectangle(x-r,y-SimulationEngine.getSizePerUnit()/2,2*r,r+SimulationEngine.getSizePerUnit()/2);
+        for (int turn = Math.floorMod(degree, 360) / 90; turn > 0; turn--) {
+            for (Rectangle rectangle : rectangles) turnQuarter(rectangle);
+        }
         return rectangles;
     }
 
+    // turns rectangle a quarter turn about (x, y), the way paint() turns the gizmo.
+    private void turnQuarter(Rectangle rectangle) {
+        int dx = rectangle.x - x, dy = rectangle.y - y;
+        rectangle.setBounds(x - dy - rectangle.height, y + dx, rectangle.height, rectangle.width);
+    }
+
     @Override
     public void paint(Graphics g) {
 
-        Rectangle clipRect = g.getClipBounds();
         Graphics2D g2d=(Graphics2D)g;
         g2d.setColor(color);
-        makeSquare();
+        validateGeometry();
         for(LineSegment lineSegment:lines){
             Line2D.Double d=lineSegment.toLine2D();
             g2d.draw(d);
@@ -0,0 +1,91 @@
+import java.util.Arrays;
+
+/**
+ * Overview: a LatencyHistogram counts durations in nanoseconds into buckets
+ * of logarithmic width, eight per power of two, so any duration up to about
+ * 9 seconds is kept within 1/8 of its value in a fixed array of counters.
+ * Recording a duration is a few shifts and an increment, and allocates
+ * nothing; percentiles are read back from the counts.
+ * A histogram is written by one thread; other threads may read it while it
+ * is written, and then see it as it was a few records before or after.
+ */
+public class LatencyHistogram {
+
+    // 2^SUB_BITS buckets per power of two.
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAGNITUDES = 34 - SUB_BITS;
+
+    private final long[] counts = new long[(MAGNITUDES + 1) * SUB_BUCKETS];
+    private long count;
+    private long total;
+    private long max;
+
+    /**
+     * @modifies this
+     * @effects counts a duration of nanos nanoseconds.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts[bucket(nanos)]++;
+        count++;
+        total += nanos;
+        if (nanos > max) max = nanos;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return the mean duration recorded, in nanoseconds, or 0 if none was.
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the smallest duration, to the resolution of the buckets, that
+     * percentile percent of the durations recorded do not exceed, or 0 if none was.
+     */
+    public long getPercentile(double percentile) {
+        long n = count;
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(max, upperBound(i));
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        max = 0;
+    }
+
+    // durations below SUB_BUCKETS have a bucket each; above, the leading bits
+    // pick the power of two and the SUB_BITS bits after them the bucket in it.
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        int magnitude = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+        if (magnitude >= MAGNITUDES) return (MAGNITUDES + 1) * SUB_BUCKETS - 1;
+        int sub = (int) (nanos >>> magnitude) - SUB_BUCKETS;
+        return (magnitude + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int magnitude = bucket / SUB_BUCKETS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << magnitude) - 1;
+    }
+}
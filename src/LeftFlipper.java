@@ -7,11 +7,11 @@ import java.awt.geom.Line2D;
 
 public class LeftFlipper extends Flipper {
 
-    public LeftFlipper(AnimationWindow animationWindow) {
-        super(animationWindow);
+    public LeftFlipper(SimulationEngine engine) {
+        super(engine);
     }
-    public LeftFlipper(int x, int y, int r, int degree, boolean crashMove, AnimationWindow animationWindow) {
-        super(x,y,r,degree,crashMove,animationWindow);
+    public LeftFlipper(int x, int y, int r, int degree, boolean crashMove, SimulationEngine engine) {
+        super(x,y,r,degree,crashMove,engine);
 
     }
 
@@ -21,31 +21,29 @@ public class LeftFlipper extends Flipper {
         while (degree >= 360) degree -= 360;
         Angle angle = findAngleByDegree(degree);
         Vect center = new Vect(new Point(x - r, y - r));
+        lines.add(Geometry.rotateAround(new LineSegment(x - r + rollerR * 2, y - r + rollerR, x - r + rollerR * 2, y + r - rollerR), center, angle));
+        lines.add(Geometry.rotateAround(new LineSegment(x - r, y - r + rollerR, x - r, y + r - rollerR), center, angle));
+        corners.add(Geometry.rotateAround(new Circle(x - r + rollerR, y - r + rollerR, rollerR), center, angle));
+        corners.add(Geometry.rotateAround(new Circle(x - r + rollerR, y + r - rollerR, rollerR), center, angle));
 
-        Angle rotatingAngle = new Angle(Math.toRadians(-rotatingDegree));
-        Vect rotatingCenter = new Vect(new Point(x-r+rollerR, y - r+rollerR));
-        LineSegment line1=Geometry.rotateAround(new LineSegment(x - r + rollerR * 2, y - r + rollerR, x - r + rollerR * 2, y + r - rollerR), center, angle);
-        lines.add(Geometry.rotateAround(line1, rotatingCenter, rotatingAngle));
-        LineSegment line2=Geometry.rotateAround(new LineSegment(x - r, y - r + rollerR, x - r, y + r - rollerR), center, angle);
-        lines.add(Geometry.rotateAround(line2, rotatingCenter, rotatingAngle));
-        Circle c1=Geometry.rotateAround(new Circle(x - r + rollerR, y - r + rollerR, rollerR), center, angle);
-        corners.add(Geometry.rotateAround(c1, rotatingCenter, rotatingAngle));
-        Circle c2=Geometry.rotateAround(new Circle(x - r + rollerR, y + r - rollerR, rollerR), center, angle);
-        corners.add(Geometry.rotateAround(c2, rotatingCenter, rotatingAngle));
 
+    }
 
+    @Override
+    protected Vect makePivot() {
+        return new Vect(x - r + rollerR, y - r + rollerR);
+    }
+
+    @Override
+    protected int direction() {
+        return -1;
     }
 
     @Override
     public void paint(Graphics g) {
-        Rectangle clipRect = g.getClipBounds();
         Graphics2D g2d = (Graphics2D) g;
         g2d.setColor(color);
-        makeFlipper();
-
-        while (rotatingDegree > 90) rotatingDegree -= 90;
-        Angle angle = new Angle(Math.toRadians(rotatingDegree));
-        Vect center = new Vect(new Point(x + r-rollerR, y - r+rollerR));
+        validateGeometry();
         for(LineSegment lineSegment:lines) {
             Line2D.Double d = lineSegment.toLine2D();
             g2d.draw(d);
@@ -66,25 +64,4 @@ public class LeftFlipper extends Flipper {
         Ellipse2D e2 = corners.get(1).toEllipse2D();
         g2d.fill(e2);
     }
-
-    public void flip(){
-        flipMode=true;
-        if(rotatingDegree>=90){
-            rotatingDegree=90;
-            return;
-        }
-        rotatingDegree+=5;
-        return;
-    }
-
-    @Override
-    public void unflip() {
-        if(rotatingDegree<=0){
-            rotatingDegree=0;
-            flipMode=false;
-            return;
-        }
-        rotatingDegree-=5;
-        return;
-    }
 }
@@ -0,0 +1,268 @@
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Overview: an OccupancyGrid maps every cell of the board (one per
+ * SIZE_PER_UNIT square) to the gizmos whose bounding boxes cover it, for the
+ * editing operations of build mode: whether a box overlaps a gizmo, which
+ * gizmo is under the mouse, and how many cells are taken.  Each only looks at
+ * the cells it touches, instead of at every gizmo on the board.
+ * A gizmo is re-indexed whenever its geometry changes, which is a no-op unless
+ * its bounding boxes moved.
+ * The cells no gizmo covers are also kept as a set, in an array with the
+ * position of each cell in it, so a free cell can be drawn at random in
+ * constant time however full the board is.
+ */
+public class OccupancyGrid {
+
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final List<AbstractGizmo>[] cells;
+    // bounding boxes and insertion order of every indexed gizmo, as inserted into the cells.
+    private final Map<AbstractGizmo, Indexed> indexed = new IdentityHashMap<>();
+    // sequence number of the next gizmo indexed.
+    private long nextSequence;
+    // number of cells covered by at least one gizmo.
+    private int coveredCells;
+    // free[0 .. cells.length - coveredCells) are the cells no gizmo covers, and
+    // freeIndex[cell] is the position of cell in free, or -1 if it is covered.
+    private final int[] free;
+    private final int[] freeIndex;
+
+    @SuppressWarnings("unchecked")
+    public OccupancyGrid(int width, int height, int cellSize) {
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (width + cellSize - 1) / cellSize);
+        this.rows = Math.max(1, (height + cellSize - 1) / cellSize);
+        this.cells = (List<AbstractGizmo>[]) new List<?>[columns * rows];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = new ArrayList<>(1);
+        }
+        this.free = new int[cells.length];
+        this.freeIndex = new int[cells.length];
+        freeAll();
+    }
+
+    /**
+     * @modifies this
+     * @effects indexes the current bounding boxes of gizmo, as the last gizmo
+     * indexed unless it already was.
+     */
+    public void insert(AbstractGizmo gizmo) {
+        Indexed old = indexed.get(gizmo);
+        long sequence = old != null ? old.sequence : nextSequence++;
+        remove(gizmo);
+        Rectangle[] rects = gizmo.boundingBoxes();
+        indexed.put(gizmo, new Indexed(rects, sequence));
+        for (Rectangle rect : rects) {
+            int minColumn = column(rect.x), maxColumn = column(rect.x + rect.width - 1);
+            int minRow = row(rect.y), maxRow = row(rect.y + rect.height - 1);
+            for (int r = minRow; r <= maxRow; r++) {
+                for (int c = minColumn; c <= maxColumn; c++) {
+                    List<AbstractGizmo> cell = cells[r * columns + c];
+                    if (cell.contains(gizmo)) continue;
+                    if (cell.isEmpty()) cover(r * columns + c);
+                    cell.add(gizmo);
+                }
+            }
+        }
+    }
+
+    /**
+     * @modifies this
+     * @effects removes gizmo from every cell it was indexed in.
+     */
+    public void remove(AbstractGizmo gizmo) {
+        Indexed old = indexed.remove(gizmo);
+        if (old == null) return;
+        for (Rectangle rect : old.boxes) {
+            int minColumn = column(rect.x), maxColumn = column(rect.x + rect.width - 1);
+            int minRow = row(rect.y), maxRow = row(rect.y + rect.height - 1);
+            for (int r = minRow; r <= maxRow; r++) {
+                for (int c = minColumn; c <= maxColumn; c++) {
+                    List<AbstractGizmo> cell = cells[r * columns + c];
+                    if (cell.remove(gizmo) && cell.isEmpty()) uncover(r * columns + c);
+                }
+            }
+        }
+    }
+
+    /**
+     * @modifies this
+     * @effects re-indexes gizmo if it is indexed and its bounding boxes changed.
+     */
+    public void update(AbstractGizmo gizmo) {
+        Indexed old = indexed.get(gizmo);
+        if (old == null) return;
+        Rectangle[] rects = gizmo.boundingBoxes();
+        if (java.util.Arrays.equals(old.boxes, rects)) return;
+        insert(gizmo);
+    }
+
+    public void clear() {
+        for (List<AbstractGizmo> cell : cells) {
+            cell.clear();
+        }
+        indexed.clear();
+        nextSequence = 0;
+        freeAll();
+    }
+
+    /**
+     * @return true if a bounding box of a gizmo other than except overlaps rect
+     * by more than minOverlap pixels both across and down.
+     */
+    public boolean overlaps(Rectangle rect, AbstractGizmo except, int minOverlap) {
+        int minColumn = column(rect.x), maxColumn = column(rect.x + rect.width - 1);
+        int minRow = row(rect.y), maxRow = row(rect.y + rect.height - 1);
+        for (int r = minRow; r <= maxRow; r++) {
+            for (int c = minColumn; c <= maxColumn; c++) {
+                for (AbstractGizmo gizmo : cells[r * columns + c]) {
+                    if (gizmo == except) continue;
+                    for (Rectangle box : indexed.get(gizmo).boxes) {
+                        Rectangle intersection = box.intersection(rect);
+                        if (intersection.width > minOverlap && intersection.height > minOverlap) return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @modifies out
+     * @effects adds to out every gizmo a bounding box of which intersects rect,
+     * once each, in no particular order.
+     */
+    public void query(Rectangle rect, List<AbstractGizmo> out) {
+        if (rect.width <= 0 || rect.height <= 0) return;
+        int minColumn = column(rect.x), maxColumn = column(rect.x + rect.width - 1);
+        int minRow = row(rect.y), maxRow = row(rect.y + rect.height - 1);
+        for (int r = minRow; r <= maxRow; r++) {
+            for (int c = minColumn; c <= maxColumn; c++) {
+                for (AbstractGizmo gizmo : cells[r * columns + c]) {
+                    // a gizmo is reported by the first of its boxes that intersects
+                    // rect, from the first cell of the box within rect.
+                    for (Rectangle box : indexed.get(gizmo).boxes) {
+                        if (!box.intersects(rect)) continue;
+                        if (c == Math.max(minColumn, column(box.x)) && r == Math.max(minRow, row(box.y)))
+                            out.add(gizmo);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the gizmo whose bounding box contains the point (x, y), edges
+     * included; of several, the one indexed last. null if there is none.
+     */
+    public AbstractGizmo pick(int x, int y) {
+        AbstractGizmo picked = null;
+        long pickedSequence = -1;
+        // a point on the edge of a cell may lie on a box of the cells next to it.
+        for (int r = row(y - 1); r <= row(y); r++) {
+            for (int c = column(x - 1); c <= column(x); c++) {
+                for (AbstractGizmo gizmo : cells[r * columns + c]) {
+                    Indexed entry = indexed.get(gizmo);
+                    if (entry.sequence <= pickedSequence) continue;
+                    for (Rectangle box : entry.boxes) {
+                        if (x >= box.x && x <= box.x + box.width && y >= box.y && y <= box.y + box.height) {
+                            picked = gizmo;
+                            pickedSequence = entry.sequence;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return picked;
+    }
+
+    /**
+     * @return the number of cells covered by a gizmo.
+     */
+    public int getCoveredCells() {
+        return coveredCells;
+    }
+
+    public int getCellCount() {
+        return cells.length;
+    }
+
+    /**
+     * @return a cell no gizmo covers, drawn uniformly with random, as its index
+     * (row * columns + column), or -1 if every cell is covered.
+     */
+    public int randomFreeCell(Random random) {
+        int count = cells.length - coveredCells;
+        return count == 0 ? -1 : free[random.nextInt(count)];
+    }
+
+    /**
+     * @return the x coordinate of the center of cell.
+     */
+    public int centerX(int cell) {
+        return (cell % columns) * cellSize + cellSize / 2;
+    }
+
+    /**
+     * @return the y coordinate of the center of cell.
+     */
+    public int centerY(int cell) {
+        return (cell / columns) * cellSize + cellSize / 2;
+    }
+
+    private void freeAll() {
+        for (int i = 0; i < cells.length; i++) {
+            free[i] = i;
+            freeIndex[i] = i;
+        }
+        coveredCells = 0;
+    }
+
+    // moves the last free cell into the slot of cell.
+    private void cover(int cell) {
+        int last = cells.length - coveredCells - 1;
+        int slot = freeIndex[cell];
+        free[slot] = free[last];
+        freeIndex[free[slot]] = slot;
+        freeIndex[cell] = -1;
+        coveredCells++;
+    }
+
+    private void uncover(int cell) {
+        int slot = cells.length - coveredCells;
+        free[slot] = cell;
+        freeIndex[cell] = slot;
+        coveredCells--;
+    }
+
+    private int column(int x) {
+        return Math.max(0, Math.min(columns - 1, Math.floorDiv(x, cellSize)));
+    }
+
+    private int row(int y) {
+        return Math.max(0, Math.min(rows - 1, Math.floorDiv(y, cellSize)));
+    }
+
+    /**
+     * The bounding boxes of an indexed gizmo, and its sequence number, which
+     * orders the gizmos as they were first indexed.
+     */
+    private static class Indexed {
+        private final Rectangle[] boxes;
+        private final long sequence;
+
+        Indexed(Rectangle[] boxes, long sequence) {
+            this.boxes = boxes;
+            this.sequence = sequence;
+        }
+    }
+}
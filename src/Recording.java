@@ -0,0 +1,342 @@
+import physics.Vect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Overview: a Recording is one run of a board that can be replayed exactly:
+ * the board and the balls as they were when the run started, the engine
+ * settings, the geometry backend and the length of its ticks, and every input (flipping the
+ * flippers or letting them go) with the number of the tick it came before.
+ * Since a SimulationEngine only depends on these, replaying a Recording steps
+ * through the same states (a FastGeometry missing impacts a stock GeometryImpl
+ * finds beyond its foresight, a run is replayed with the backend it was
+ * recorded with), whether in real time in an AnimationWindow or as
+ * fast as possible as a benchmark workload.
+ * Recordings are saved in a compact binary file (see save()).
+ *
+ * Usage: java Recording run.gizmorec [realtime]
+ */
+public class Recording {
+
+    public static final String EXTENSION = "gizmorec";
+
+    private static final int MAGIC = 0x475A5243; // "GZRC"
+    private static final int VERSION = 2;
+
+    private final double interval;
+    private final boolean eventDriven;
+    private final boolean packedFeatures;
+    private final SimulationEngine.GeometryBackend geometry;
+
+    // the gizmos in the order of the engine: class, then x, y, r, degree,
+    // crash-move and track as 0 or 1, turn and flipped (0 or 1) of a flipper.
+    private final List<String> classNames = new ArrayList<>();
+    private final List<double[]> gizmos = new ArrayList<>();
+
+    // x, y, vx, vy and in play (0 or 1) of every ball.
+    private final List<double[]> balls = new ArrayList<>();
+
+    // inputTicks[i] is the tick, counted from the start of the run, before which
+    // the flippers were flipped (inputFlipped[i]) or let go.
+    private long[] inputTicks = new long[16];
+    private boolean[] inputFlipped = new boolean[16];
+    private int inputCount;
+    // number of ticks of the run.
+    private long length;
+
+    // tick count of the engine when the run started, while recording.
+    private long startTick;
+
+    private Recording(double interval, boolean eventDriven, boolean packedFeatures,
+                      SimulationEngine.GeometryBackend geometry) {
+        this.interval = interval;
+        this.eventDriven = eventDriven;
+        this.packedFeatures = packedFeatures;
+        this.geometry = geometry;
+    }
+
+    /**
+     * @return a recording of a run of engine starting now, with ticks of interval milliseconds.
+     */
+    public static Recording start(SimulationEngine engine, double interval) {
+        Recording recording = new Recording(interval, engine.isEventDriven(), engine.isPackedFeatures(),
+                SimulationEngine.getGeometryBackend());
+        for (AbstractGizmo gizmo : engine.getGizmoList()) {
+            Flipper flipper = gizmo instanceof Flipper ? (Flipper) gizmo : null;
+            recording.classNames.add(gizmo.getClass().getName());
+            recording.gizmos.add(new double[]{gizmo.x, gizmo.y, gizmo.r, gizmo.degree,
+                    gizmo.isCrashMove() ? 1 : 0, gizmo.isTracker() ? 1 : 0,
+                    flipper == null ? 0 : flipper.getTurn(), flipper != null && flipper.isFlipped() ? 1 : 0});
+        }
+        for (BouncingBall ball : engine.getBalls()) {
+            recording.balls.add(new double[]{ball.getX(), ball.getY(), ball.getVx(), ball.getVy(),
+                    ball.isInPlay() ? 1 : 0});
+        }
+        recording.startTick = engine.getTickCount();
+        return recording;
+    }
+
+    /**
+     * @modifies this
+     * @effects records that the flippers were flipped (or let go if not flipped)
+     * before tick number tick of the engine.
+     */
+    public void input(long tick, boolean flipped) {
+        if (inputCount == inputTicks.length) {
+            inputTicks = Arrays.copyOf(inputTicks, inputCount * 2);
+            inputFlipped = Arrays.copyOf(inputFlipped, inputCount * 2);
+        }
+        inputTicks[inputCount] = tick - startTick;
+        inputFlipped[inputCount] = flipped;
+        inputCount++;
+    }
+
+    /**
+     * @modifies this
+     * @effects ends the run when the engine has done tick ticks.
+     */
+    public void finish(long tick) {
+        length = tick - startTick;
+    }
+
+    public double getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return the geometry backend the run was recorded with.
+     */
+    public SimulationEngine.GeometryBackend getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * @return the number of ticks of the run.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public int getInputCount() {
+        return inputCount;
+    }
+
+    /**
+     * @modifies engine
+     * @effects replaces the board and the balls of engine by those at the start
+     * of the run, with the same settings, ready to replay it, and installs the
+     * geometry backend of the run if another is installed.
+     * @throws IllegalStateException if a gizmo class of the recording cannot be created.
+     */
+    public void restore(SimulationEngine engine) {
+        engine.clear();
+        engine.setEventDriven(eventDriven);
+        engine.setPackedFeatures(packedFeatures);
+        if (SimulationEngine.getGeometryBackend() != geometry) engine.useGeometry(geometry);
+        for (int i = 0; i < gizmos.size(); i++) {
+            double[] g = gizmos.get(i);
+            AbstractGizmo gizmo;
+            try {
+                Constructor<?> c = Class.forName(classNames.get(i)).getDeclaredConstructor(
+                        int.class, int.class, int.class, int.class, boolean.class, SimulationEngine.class);
+                gizmo = (AbstractGizmo) c.newInstance((int) g[0], (int) g[1], (int) g[2], (int) g[3], g[4] != 0, engine);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("cannot create " + classNames.get(i), e);
+            }
+            gizmo.initTracker(g[5] != 0);
+            engine.addGizmo(gizmo);
+            if (gizmo instanceof Flipper) ((Flipper) gizmo).setPose(g[6], g[7] != 0);
+        }
+        List<BouncingBall> current = new ArrayList<>(engine.getBalls());
+        for (BouncingBall ball : current) engine.removeBall(ball);
+        for (int i = 0; i < balls.size(); i++) {
+            double[] b = balls.get(i);
+            BouncingBall ball = i == 0 ? engine.getBall() : engine.addBall(b[0], b[1], new Vect(b[2], b[3]));
+            ball.setPosition(b[0], b[1]);
+            ball.setVelocity(b[2], b[3]);
+            if (b[4] == 0) ball.remove();
+        }
+        engine.compileBoard();
+    }
+
+    /**
+     * @return a replay of this run on engine, restored to its start.
+     */
+    public Replay replay(SimulationEngine engine) {
+        restore(engine);
+        return new Replay(engine);
+    }
+
+    /**
+     * Overview: a Replay steps an engine through a recorded run, applying each
+     * input before the tick it was recorded before.
+     */
+    public class Replay {
+        private final SimulationEngine engine;
+        private long tick;
+        private int next;
+
+        private Replay(SimulationEngine engine) {
+            this.engine = engine;
+        }
+
+        /**
+         * @modifies the engine
+         * @effects does the next tick of the run.
+         * @return false if the run was over, and nothing was done.
+         */
+        public boolean step() {
+            if (tick >= length) return false;
+            while (next < inputCount && inputTicks[next] <= tick) {
+                engine.setFlipped(inputFlipped[next++]);
+            }
+            engine.step(interval);
+            tick++;
+            return true;
+        }
+
+        /**
+         * @return the number of ticks replayed so far.
+         */
+        public long getTick() {
+            return tick;
+        }
+    }
+
+    /**
+     * @effects writes this to file: a header (magic number, version, tick length,
+     * settings, geometry backend and counts), the gizmos, the balls, then the inputs as
+     * variable-length tick deltas with the flipped state in their lowest bit.
+     */
+    public void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeDouble(interval);
+            out.writeByte((eventDriven ? 1 : 0) | (packedFeatures ? 2 : 0));
+            out.writeUTF(geometry.name());
+            out.writeLong(length);
+            out.writeInt(gizmos.size());
+            out.writeInt(balls.size());
+            out.writeInt(inputCount);
+            for (int i = 0; i < gizmos.size(); i++) {
+                double[] g = gizmos.get(i);
+                out.writeUTF(classNames.get(i));
+                for (int k = 0; k < 4; k++) out.writeInt((int) g[k]);
+                out.writeByte((g[4] != 0 ? 1 : 0) | (g[5] != 0 ? 2 : 0) | (g[7] != 0 ? 4 : 0));
+                out.writeDouble(g[6]);
+            }
+            for (double[] b : balls) {
+                for (int k = 0; k < 4; k++) out.writeDouble(b[k]);
+                out.writeBoolean(b[4] != 0);
+            }
+            long previous = 0;
+            for (int i = 0; i < inputCount; i++) {
+                writeVarLong(out, (inputTicks[i] - previous) << 1 | (inputFlipped[i] ? 1 : 0));
+                previous = inputTicks[i];
+            }
+        }
+    }
+
+    /**
+     * @return the recording saved to file by save().
+     * @throws IOException if file cannot be read or is not a recording.
+     */
+    public static Recording load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException(file + " is not a gizmoball recording");
+            int version = in.readShort();
+            if (version != VERSION) throw new IOException("unsupported recording version " + version);
+            double interval = in.readDouble();
+            int settings = in.readByte();
+            SimulationEngine.GeometryBackend geometry;
+            try {
+                geometry = SimulationEngine.GeometryBackend.valueOf(in.readUTF());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("unknown geometry backend", e);
+            }
+            Recording recording = new Recording(interval, (settings & 1) != 0, (settings & 2) != 0, geometry);
+            recording.length = in.readLong();
+            int gizmoCount = in.readInt();
+            int ballCount = in.readInt();
+            int inputCount = in.readInt();
+            for (int i = 0; i < gizmoCount; i++) {
+                recording.classNames.add(in.readUTF());
+                double[] g = new double[8];
+                for (int k = 0; k < 4; k++) g[k] = in.readInt();
+                int flags = in.readByte();
+                g[4] = flags & 1;
+                g[5] = (flags >> 1) & 1;
+                g[7] = (flags >> 2) & 1;
+                g[6] = in.readDouble();
+                recording.gizmos.add(g);
+            }
+            for (int i = 0; i < ballCount; i++) {
+                double[] b = new double[5];
+                for (int k = 0; k < 4; k++) b[k] = in.readDouble();
+                b[4] = in.readBoolean() ? 1 : 0;
+                recording.balls.add(b);
+            }
+            long tick = 0;
+            for (int i = 0; i < inputCount; i++) {
+                long value = readVarLong(in);
+                tick += value >>> 1;
+                recording.input(tick, (value & 1) != 0);
+            }
+            return recording;
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: java Recording run." + EXTENSION + " [realtime]");
+            System.exit(2);
+        }
+        Recording recording = load(new File(args[0]));
+        boolean realTime = args.length > 1 && args[1].equals("realtime");
+        SimulationEngine engine = new SimulationEngine();
+        Replay replay = recording.replay(engine);
+        long tickNanos = (long) (recording.getInterval() * 1e6);
+        long start = System.nanoTime();
+        while (replay.step()) {
+            if (!realTime) continue;
+            long wait = start + replay.getTick() * tickNanos - System.nanoTime();
+            if (wait > 0) Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d ticks, %d inputs in %.3fs (%.0f ticks/s)%n", replay.getTick(),
+                recording.getInputCount(), elapsed, replay.getTick() / elapsed);
+        for (BouncingBall ball : engine.getBalls()) {
+            System.out.printf("ball at (%s, %s) velocity (%s, %s)%s%n", ball.getX(), ball.getY(),
+                    ball.getVx(), ball.getVy(), ball.isInPlay() ? "" : " absorbed");
+        }
+    }
+}
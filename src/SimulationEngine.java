@@ -0,0 +1,676 @@
+import physics.Geometry;
+import physics.GeometryCompare;
+import physics.GeometryImpl;
+import physics.Vect;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Overview: a SimulationEngine is the state of a gizmoball world (its bounds,
+ * the gizmos on the board and the balls) together with the rules that advance
+ * it in time.  It has no Swing dependency, so it can be stepped as fast as the
+ * CPU allows (e.g. on a headless machine); AnimationWindow only renders it.
+ */
+public class SimulationEngine {
+
+    private static final int SIZE_PER_UNIT = 20;
+    private static final int WINDOW_UNIT_HEIGHT = 20;
+    private static final int WINDOW_UNIT_WIDTH = 20;
+    // length of a simulation tick in milliseconds, as the window runs them:
+    // one frame at 25 frames per second by default.
+    private static final double TICK_MILLIS = Double.parseDouble(System.getProperty("gizmoball.tickMillis", "40"));
+    // the backend of physics.Geometry, which is shared by the whole process.
+    private static volatile GeometryBackend geometryBackend = GeometryBackend.STOCK;
+
+    private final int width;
+    private final int height;
+
+    private List<AbstractGizmo> gizmoList;
+    private List<Flipper> flipperList;
+    // the first ball is the one put back to the start by resetBall().
+    private List<BouncingBall> balls;
+    private CollisionGrid collisionGrid;
+    // the cells covered by each gizmo, for editing the board.
+    private OccupancyGrid occupancyGrid;
+    private FeatureStore featureStore;
+    // the merged features of the static gizmos while the board is compiled, and those gizmos.
+    private List<CollisionInfo> compiledFeatures;
+    private Set<AbstractGizmo> compiledGizmos;
+    private BallBroadphase ballBroadphase;
+    private TimeOfImpactStepper impactStepper;
+    // the FastGeometry installed into physics.Geometry by useGeometry(), if any.
+    private FastGeometry fastGeometry;
+    // length of the last tick, the foresight of fastGeometry follows it.
+    private double lastInterval;
+    // number of ticks stepped since the engine was created.
+    private long tickCount;
+
+    // advance by exact times of impact instead of fixed ticks with a collision threshold.
+    private boolean eventDriven;
+    // detect collisions in fixed ticks with the packed FeatureStore instead of the CollisionGrid.
+    private boolean packedFeatures;
+    // new gizmos are created as trackers while this is on.
+    private boolean trackMode;
+    // set when a step moved a gizmo (crash-move or flipper), cleared by consumeBoardChanged().
+    private boolean boardChanged;
+    // told about every impact of a ball with a gizmo, or null.
+    private ImpactListener impactListener;
+    // captures the world after every tick, or null.
+    private WorldHistory history;
+    // records the time of every tick and its phases, or null.
+    private TickMetrics metrics;
+    // changed by every edit that may change how the static gizmos look.
+    private int staticVersion;
+    // draws the positions of gizmos placed at random.
+    private Random placementRandom = new Random();
+
+    /**
+     * Overview: an ImpactListener observes the impacts of the balls with the
+     * gizmos of a SimulationEngine, as they are resolved.
+     */
+    public interface ImpactListener {
+        /**
+         * Called before the impact of ball with gizmo takes effect.
+         */
+        void impact(BouncingBall ball, AbstractGizmo gizmo);
+    }
+
+    /**
+     * The implementations of physics.Geometry an engine can compute impacts with.
+     */
+    public enum GeometryBackend {
+        // physics.GeometryImpl, as physics.Geometry starts out with.
+        STOCK,
+        FAST,
+        // FastGeometry checked against GeometryImpl on every call.
+        COMPARE
+    }
+
+    /**
+     * @effects creates an empty world of SIZE_PER_UNIT*WINDOW_UNIT_WIDTH by
+     * SIZE_PER_UNIT*WINDOW_UNIT_HEIGHT pixels with one ball in it.
+     */
+    public SimulationEngine() {
+        this(SIZE_PER_UNIT * WINDOW_UNIT_WIDTH, SIZE_PER_UNIT * WINDOW_UNIT_HEIGHT);
+    }
+
+    public SimulationEngine(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.gizmoList = new ArrayList<>();
+        this.flipperList = new ArrayList<>();
+        this.collisionGrid = new CollisionGrid(width, height, SIZE_PER_UNIT);
+        this.occupancyGrid = new OccupancyGrid(width, height, SIZE_PER_UNIT);
+        this.featureStore = new FeatureStore(this);
+        this.compiledFeatures = new ArrayList<>();
+        this.compiledGizmos = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.balls = new ArrayList<>();
+        this.balls.add(new BouncingBall(this));
+        this.ballBroadphase = new BallBroadphase();
+        this.impactStepper = new TimeOfImpactStepper(this);
+        this.eventDriven = false;
+        this.trackMode = false;
+    }
+
+    /**
+     * Advances the world by one tick.
+     *
+     * @param interval length of the tick in milliseconds
+     * @modifies the balls and, on a crash-move, the gizmos they hit
+     * @effects moves every ball in play and resolves at most one collision of
+     * each with a gizmo and then the collisions between balls, or, in
+     * event-driven mode, every collision on their way in time order.
+     */
+    public void step(double interval) {
+        long tickStart = metrics == null ? 0 : System.nanoTime();
+        tickCount++;
+        if (interval != lastInterval) {
+            lastInterval = interval;
+            if (fastGeometry != null) fastGeometry.setForesight(foresight(interval));
+        }
+        if (eventDriven) {
+            impactStepper.step(interval);
+            advanceFlippers(interval);
+            if (history != null) history.capture(this);
+            if (metrics != null) metrics.record(TickMetrics.Phase.TICK, System.nanoTime() - tickStart);
+            return;
+        }
+        boolean flippersTurning = isAnyFlipperTurning();
+        for (int i = 0; i < balls.size(); i++) {
+            BouncingBall ball = balls.get(i);
+            if (!ball.isInPlay()) continue;
+            long start = metrics == null ? 0 : System.nanoTime();
+            ball.move(interval);
+            long moved = metrics == null ? 0 : System.nanoTime();
+            CollisionInfo collisionInfo = packedFeatures ? ball.detectCollision(featureStore) : ball.detectCollision(collisionGrid);
+            if (flippersTurning) collisionInfo = ball.detectFlipperCollision(flipperList, collisionInfo);
+            if (metrics == null) {
+                if (collisionInfo != null) resolve(ball, collisionInfo);
+                continue;
+            }
+            long detected = System.nanoTime();
+            metrics.record(TickMetrics.Phase.MOVE, moved - start);
+            metrics.record(TickMetrics.Phase.DETECT, detected - moved);
+            metrics.featuresTested(ball.getFeaturesTested());
+            if (collisionInfo != null) {
+                resolve(ball, collisionInfo);
+                metrics.record(TickMetrics.Phase.RESOLVE, System.nanoTime() - detected);
+            }
+        }
+        if (balls.size() > 1) {
+            collideBalls();
+        }
+        advanceFlippers(interval);
+        if (history != null) history.capture(this);
+        if (metrics != null) metrics.record(TickMetrics.Phase.TICK, System.nanoTime() - tickStart);
+    }
+
+    /**
+     * @modifies ball and, on a crash-move, the gizmo it hit
+     * @effects ball falls into the absorber, is caught by the track or bounces
+     * off the gizmo owning feature, and the impact listener is told which gizmo it hit.
+     */
+    void resolve(BouncingBall ball, CollisionInfo feature) {
+        AbstractGizmo gizmo = feature.getGizmo();
+        if (impactListener != null) impactListener.impact(ball, feature.getGizmoAt(ball.getX(), ball.getY()));
+        if (metrics != null) metrics.collision(gizmo.getClass() == AbsorberGizmo.class);
+        if (gizmo.getClass() == AbsorberGizmo.class) {
+            SimulationEvents.AbsorberCapture event = SimulationEvents.isRecording() ? new SimulationEvents.AbsorberCapture() : null;
+            if (event != null && event.shouldCommit()) {
+                event.absorberX = gizmo.x;
+                event.absorberY = gizmo.y;
+                event.ballX = ball.getX();
+                event.ballY = ball.getY();
+                event.commit();
+            }
+            ball.remove();
+        } else if (gizmo.isTracker())
+            ball.inTrack();
+        else
+            ball.dealCollision(feature);
+    }
+
+    /**
+     * Turns the flippers to where they are at the end of the tick; the balls
+     * met them turning from where they were at its start.
+     */
+    private void advanceFlippers(double interval) {
+        for (int i = 0; i < flipperList.size(); i++) {
+            if (flipperList.get(i).advance(interval / 100)) markBoardChanged();
+        }
+    }
+
+    private boolean isAnyFlipperTurning() {
+        for (int i = 0; i < flipperList.size(); i++) {
+            if (flipperList.get(i).getAngularVelocity() != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @modifies the flippers
+     * @effects starts turning every flipper up if flipped, or back down otherwise.
+     */
+    public void setFlipped(boolean flipped) {
+        for (Flipper flipper : flipperList) {
+            if (flipped) flipper.flip();
+            else flipper.unflip();
+        }
+    }
+
+    /**
+     * Reflects every pair of balls that will touch within the collision
+     * threshold, testing only the pairs found by the sort-and-sweep broadphase.
+     */
+    private void collideBalls() {
+        ballBroadphase.update(balls, BouncingBall.COLLISION_THRESHOLD);
+        for (int k = 0; k < ballBroadphase.getPairCount(); k++) {
+            BouncingBall a = balls.get(ballBroadphase.getFirst(k));
+            BouncingBall b = balls.get(ballBroadphase.getSecond(k));
+            if (!a.isInPlay() || !b.isInPlay()) continue;
+            if (timeUntilBallBallCollision(a, b) <= BouncingBall.COLLISION_THRESHOLD) {
+                reflectBalls(a, b);
+            }
+        }
+    }
+
+    /**
+     * Same result as Geometry.timeUntilBallBallCollision for the current
+     * positions and velocities of a and b, without allocating.
+     */
+    static double timeUntilBallBallCollision(BouncingBall a, BouncingBall b) {
+        double dx = a.getX() - b.getX();
+        double dy = a.getY() - b.getY();
+        double dvx = a.getVx() - b.getVx();
+        double dvy = a.getVy() - b.getVy();
+        double sizes = a.getRadius() + b.getRadius();
+        double c = dx * dx + dy * dy - sizes * sizes;
+        // overlapping or touching: they collide now if they move toward each other.
+        if (c <= 0.0) return dvx * dx + dvy * dy < 0.0 ? 0.0 : Double.POSITIVE_INFINITY;
+        double qa = dvx * dvx + dvy * dvy;
+        double qb = 2 * (dx * dvx + dy * dvy);
+        if (qa == 0) return Double.POSITIVE_INFINITY;
+        double discriminant = qb * qb - 4.0 * qa * c;
+        if (discriminant < 0) return Double.POSITIVE_INFINITY;
+        double time = (-qb - Math.sqrt(discriminant)) / (2.0 * qa);
+        return time > 0 ? time : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @modifies a, b
+     * @effects gives a and b the velocities after an elastic collision between
+     * balls of equal mass, as Geometry.reflectBalls does.
+     */
+    static void reflectBalls(BouncingBall a, BouncingBall b) {
+        double tx = a.getX() - b.getX();
+        double ty = a.getY() - b.getY();
+        double length = Math.sqrt(tx * tx + ty * ty);
+        if (length == 0) return;
+        tx /= length;
+        ty /= length;
+        // the velocity components along the line of centers are exchanged.
+        double gamma = -((a.getVx() - b.getVx()) * tx + (a.getVy() - b.getVy()) * ty);
+        a.setVelocity(a.getVx() + tx * gamma, a.getVy() + ty * gamma);
+        b.setVelocity(b.getVx() - tx * gamma, b.getVy() - ty * gamma);
+    }
+
+    /**
+     * @return how far ahead (in time units of 100ms) impacts have to be found
+     * for ticks of interval milliseconds: the whole tick in event-driven mode,
+     * the collision threshold in fixed ticks.
+     */
+    private static double foresight(double interval) {
+        return Math.max(BouncingBall.COLLISION_THRESHOLD, interval / 100);
+    }
+
+    /**
+     * Installs backend as the backend of physics.Geometry.  A FastGeometry has
+     * its foresight follow the length of the ticks of this engine; COMPARE
+     * runs every call through both FastGeometry and the stock GeometryImpl and
+     * fails on any difference, the foresight being unbounded so both give the
+     * same answers.
+     * The backend is process-wide: every engine of the JVM, including those
+     * of a BatchRunner, a replay or a benchmark, computes its impacts with it
+     * and with the foresight of the engine that installed it, so FAST is only
+     * meant for a process stepping one engine, or engines with ticks of the
+     * same length.  Nothing installs it unless asked to.
+     */
+    public void useGeometry(GeometryBackend backend) {
+        fastGeometry = null;
+        switch (backend) {
+            case STOCK:
+                Geometry.setGeometry(new GeometryImpl());
+                break;
+            case FAST:
+                fastGeometry = new FastGeometry(foresight(lastInterval));
+                Geometry.setGeometry(fastGeometry);
+                break;
+            case COMPARE:
+                Geometry.setGeometry(new GeometryCompare(new FastGeometry(Double.POSITIVE_INFINITY), new GeometryImpl()));
+                break;
+        }
+        geometryBackend = backend;
+    }
+
+    /**
+     * @return the backend last installed into physics.Geometry by an engine of this process.
+     */
+    public static GeometryBackend getGeometryBackend() {
+        return geometryBackend;
+    }
+
+    /**
+     * Steps the world ticks times as fast as possible.
+     *
+     * @return the number of ticks per second achieved.
+     */
+    public double run(int ticks, double interval) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ticks; i++) {
+            step(interval);
+        }
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        return ticks * 1e9 / elapsed;
+    }
+
+    public void addGizmo(AbstractGizmo gizmo) {
+        decompileBoard();
+        gizmoList.add(gizmo);
+        if (gizmo instanceof Flipper)
+            flipperList.add((Flipper) gizmo);
+        collisionGrid.insert(gizmo);
+        occupancyGrid.insert(gizmo);
+        featureStore.invalidate();
+        staticVersion++;
+    }
+
+    /**
+     * @modifies this
+     * @effects adds every gizmo of gizmos, in order, as addGizmo() would, but
+     * invalidating the packed features and the cached background only once.
+     */
+    public void addGizmos(List<? extends AbstractGizmo> gizmos) {
+        if (gizmos.isEmpty()) return;
+        decompileBoard();
+        for (AbstractGizmo gizmo : gizmos) {
+            gizmoList.add(gizmo);
+            if (gizmo instanceof Flipper)
+                flipperList.add((Flipper) gizmo);
+            collisionGrid.insert(gizmo);
+            occupancyGrid.insert(gizmo);
+        }
+        featureStore.invalidate();
+        staticVersion++;
+    }
+
+    public void removeGizmo(AbstractGizmo gizmo) {
+        decompileBoard();
+        gizmoList.remove(gizmo);
+        flipperList.remove(gizmo);
+        collisionGrid.remove(gizmo);
+        occupancyGrid.remove(gizmo);
+        featureStore.invalidate();
+        staticVersion++;
+    }
+
+    /**
+     * @effects adds a ball centered at (x, y) moving with velocity to the world.
+     */
+    public BouncingBall addBall(double x, double y, Vect velocity) {
+        BouncingBall ball = new BouncingBall(this, x, y, velocity);
+        balls.add(ball);
+        return ball;
+    }
+
+    /**
+     * Removes ball from the world; the first ball always stays.
+     */
+    public void removeBall(BouncingBall ball) {
+        if (balls.indexOf(ball) > 0) balls.remove(ball);
+    }
+
+    public boolean hasBallInPlay() {
+        for (BouncingBall ball : balls) {
+            if (ball.isInPlay()) return true;
+        }
+        return false;
+    }
+
+    public void clear() {
+        decompileBoard();
+        gizmoList.clear();
+        flipperList.clear();
+        collisionGrid.clear();
+        occupancyGrid.clear();
+        featureStore.invalidate();
+        staticVersion++;
+    }
+
+    /**
+     * Replaces the features of the gizmos that cannot move during a run in the
+     * collision index by the fewer features StaticGeometry merges them into.
+     * Any change to the board undoes it, until the next call.
+     */
+    public void compileBoard() {
+        decompileBoard();
+        for (AbstractGizmo gizmo : gizmoList) {
+            if (StaticGeometry.isStatic(gizmo)) compiledGizmos.add(gizmo);
+        }
+        if (compiledGizmos.isEmpty()) return;
+        compiledFeatures = StaticGeometry.compile(gizmoList);
+        for (AbstractGizmo gizmo : compiledGizmos) {
+            collisionGrid.remove(gizmo);
+        }
+        collisionGrid.insert(StaticGeometry.class, compiledFeatures);
+        featureStore.invalidate();
+    }
+
+    /**
+     * Puts the features of every gizmo back in the collision index as they are.
+     */
+    public void decompileBoard() {
+        if (compiledGizmos.isEmpty()) return;
+        collisionGrid.remove(StaticGeometry.class);
+        for (AbstractGizmo gizmo : compiledGizmos) {
+            if (gizmoList.contains(gizmo)) collisionGrid.insert(gizmo);
+        }
+        compiledGizmos.clear();
+        compiledFeatures = new ArrayList<>();
+        featureStore.invalidate();
+    }
+
+    boolean isCompiled(AbstractGizmo gizmo) {
+        return compiledGizmos.contains(gizmo);
+    }
+
+    List<CollisionInfo> getCompiledFeatures() {
+        return compiledFeatures;
+    }
+
+    /**
+     * Called by a gizmo after its geometry changed (moved, rotated or resized).
+     */
+    void gizmoChanged(AbstractGizmo gizmo) {
+        gizmoPoseChanged(gizmo);
+        occupancyGrid.update(gizmo);
+    }
+
+    /**
+     * Called by a gizmo after its geometry changed within the same bounding
+     * boxes, as a flipper turning about its pivot does every tick, so the
+     * occupancy grid is left alone.
+     */
+    void gizmoPoseChanged(AbstractGizmo gizmo) {
+        if (compiledGizmos.contains(gizmo)) decompileBoard();
+        collisionGrid.update(gizmo);
+        featureStore.update(gizmo);
+        if (StaticGeometry.isStatic(gizmo)) staticVersion++;
+    }
+
+    /**
+     * Called by a gizmo that became static or stopped being static.
+     */
+    void staticChanged(AbstractGizmo gizmo) {
+        if (compiledGizmos.contains(gizmo)) decompileBoard();
+        staticVersion++;
+    }
+
+    /**
+     * @return a number that changes whenever a static gizmo (see
+     * StaticGeometry.isStatic) may be drawn differently: added, removed, edited,
+     * or turned static or not.
+     */
+    public int getStaticVersion() {
+        return staticVersion;
+    }
+
+    /**
+     * @return true if th overlaps the bounding box of a gizmo.
+     */
+    public boolean hasCoincidenceWithOthers(Rectangle th) {
+        return occupancyGrid.overlaps(th, null, 0);
+    }
+
+    /**
+     * @return true if a bounding box of gizmo overlaps that of another gizmo by
+     * more than a pixel each way.
+     */
+    public boolean hasCoincidenceWithOthers(AbstractGizmo gizmo) {
+        for (Rectangle rectangle : gizmo.boundingBoxes()) {
+            if (occupancyGrid.overlaps(rectangle, gizmo, 1)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of cells of SIZE_PER_UNIT covered by gizmos.
+     */
+    public int summarizeGizmoSize() {
+        return occupancyGrid.getCoveredCells();
+    }
+
+    /**
+     * @return the center of a cell of SIZE_PER_UNIT no gizmo covers, drawn
+     * uniformly with the placement random generator, or null if the board is full.
+     */
+    public Point randomFreeCell() {
+        int cell = occupancyGrid.randomFreeCell(placementRandom);
+        if (cell < 0) return null;
+        return new Point(occupancyGrid.centerX(cell), occupancyGrid.centerY(cell));
+    }
+
+    /**
+     * @modifies this
+     * @effects seeds the generator of randomFreeCell(), so the same additions
+     * to the same board place gizmos in the same cells.
+     */
+    public void setPlacementSeed(long seed) {
+        placementRandom = new Random(seed);
+    }
+
+    /**
+     * @return the gizmo under the point (x, y), edges included, or null; of
+     * overlapping gizmos, the one added last.
+     */
+    public AbstractGizmo pickGizmo(int x, int y) {
+        return occupancyGrid.pick(x, y);
+    }
+
+    /**
+     * @return true if a gizmo was moved by the simulation since the last call.
+     */
+    public boolean consumeBoardChanged() {
+        boolean changed = boardChanged;
+        boardChanged = false;
+        return changed;
+    }
+
+    void markBoardChanged() {
+        boardChanged = true;
+    }
+
+    public List<AbstractGizmo> getGizmoList() {
+        return gizmoList;
+    }
+
+    public List<Flipper> getFlipperList() {
+        return flipperList;
+    }
+
+    public CollisionGrid getCollisionGrid() {
+        return collisionGrid;
+    }
+
+    public OccupancyGrid getOccupancyGrid() {
+        return occupancyGrid;
+    }
+
+    public FeatureStore getFeatureStore() {
+        return featureStore;
+    }
+
+    /**
+     * @return the first ball, which always exists.
+     */
+    public BouncingBall getBall() {
+        return balls.get(0);
+    }
+
+    public List<BouncingBall> getBalls() {
+        return balls;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public WorldHistory getHistory() {
+        return history;
+    }
+
+    public void setHistory(WorldHistory history) {
+        this.history = history;
+    }
+
+    public TickMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @modifies this
+     * @effects records the timing of every tick and the collisions into metrics,
+     * or stops recording if metrics is null.
+     */
+    public void setMetrics(TickMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setImpactListener(ImpactListener impactListener) {
+        this.impactListener = impactListener;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public boolean isEventDriven() {
+        return eventDriven;
+    }
+
+    /**
+     * Switches between fixed ticks with a collision threshold (the default) and
+     * time-of-impact stepping, which stays correct for larger intervals per tick.
+     */
+    public void setEventDriven(boolean eventDriven) {
+        this.eventDriven = eventDriven;
+    }
+
+    public boolean isPackedFeatures() {
+        return packedFeatures;
+    }
+
+    /**
+     * Switches the fixed-tick collision detection between the CollisionGrid
+     * (the default) and the packed FeatureStore, to compare the two.
+     */
+    public void setPackedFeatures(boolean packedFeatures) {
+        this.packedFeatures = packedFeatures;
+    }
+
+    public boolean isTrackMode() {
+        return trackMode;
+    }
+
+    public void setTrackMode(boolean trackMode) {
+        this.trackMode = trackMode;
+    }
+
+    public static int getSizePerUnit() {
+        return SIZE_PER_UNIT;
+    }
+
+    public static int getWindowUnitHeight() {
+        return WINDOW_UNIT_HEIGHT;
+    }
+
+    public static int getWindowUnitWidth() {
+        return WINDOW_UNIT_WIDTH;
+    }
+
+    /**
+     * @return the length of a tick in milliseconds, set with the gizmoball.tickMillis property.
+     */
+    public static double getTickMillis() {
+        return TICK_MILLIS;
+    }
+}
@@ -0,0 +1,136 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+
+/**
+ * Overview: the Java Flight Recorder events of Gizmoball: a tick of the
+ * running simulation, a collision of a ball with a gizmo, a ball captured by
+ * an absorber, and a board loaded from a file.
+ * Every event is disabled by default and records no stack trace.  The events
+ * emitted during a tick are only created while some recording is running, as
+ * isRecording() tells, so the simulation allocates nothing for them otherwise,
+ * even before the JIT has compiled it; their fields are only computed when
+ * shouldCommit() is true.  To record them,
+ * enable them by name in the settings of a recording, for instance with
+ * -XX:StartFlightRecording:filename=gizmoball.jfr,+gizmoball.Tick#enabled=true
+ * or in a .jfc file made with the jfr configure command.
+ */
+public final class SimulationEvents {
+
+    private static final String CATEGORY = "Gizmoball";
+
+    // true while a Flight Recorder recording is running.
+    private static volatile boolean recording;
+
+    static {
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recorderInitialized(FlightRecorder recorder) {
+                recording = isAnyRunning();
+            }
+
+            @Override
+            public void recordingStateChanged(jdk.jfr.Recording changed) {
+                recording = isAnyRunning();
+            }
+        });
+    }
+
+    private SimulationEvents() {
+    }
+
+    /**
+     * @return whether a recording is running, which events emitted on the
+     * simulation path are worth creating for.
+     */
+    public static boolean isRecording() {
+        return recording;
+    }
+
+    private static boolean isAnyRunning() {
+        for (jdk.jfr.Recording r : FlightRecorder.getFlightRecorder().getRecordings()) {
+            if (r.getState() == RecordingState.RUNNING) return true;
+        }
+        return false;
+    }
+
+    @Name("gizmoball.Tick")
+    @Label("Simulation Tick")
+    @Description("A tick of the simulation advanced by the window in running mode")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Tick extends Event {
+        @Label("Balls")
+        @Description("Balls in play at the end of the tick")
+        int balls;
+
+        @Label("Features Tested")
+        @Description("Collision features the balls computed a time of impact with")
+        int featuresTested;
+    }
+
+    @Name("gizmoball.Collision")
+    @Label("Collision")
+    @Description("A ball bouncing off a gizmo")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Collision extends Event {
+        @Label("Gizmo Class")
+        String gizmoClass;
+
+        @Label("Feature Type")
+        @Description("segment or corner")
+        String featureType;
+
+        @Label("Time of Impact")
+        @Description("Time until the ball touches the feature, in time units of 100 ms, when the collision is resolved")
+        double timeOfImpact;
+    }
+
+    @Name("gizmoball.AbsorberCapture")
+    @Label("Absorber Capture")
+    @Description("A ball falling into an absorber")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class AbsorberCapture extends Event {
+        @Label("Absorber X")
+        int absorberX;
+
+        @Label("Absorber Y")
+        int absorberY;
+
+        @Label("Ball X")
+        double ballX;
+
+        @Label("Ball Y")
+        double ballY;
+    }
+
+    @Name("gizmoball.BoardLoad")
+    @Label("Board Load")
+    @Description("A board read from a .gizmo file")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class BoardLoad extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Gizmos")
+        int gizmos;
+
+        @Label("Error")
+        @Description("Why the file could not be read, or null if it was")
+        String error;
+    }
+}
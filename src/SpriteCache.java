@@ -0,0 +1,117 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Overview: a SpriteCache draws gizmos from images rasterized once per
+ * variant.  Apart from its position, how a gizmo looks only depends on its
+ * class, size, rotation and color (the color of the graphics it is drawn on
+ * for a gizmo without one, and the scale of the screen), so the first
+ * gizmo of a variant is painted into an image and every later one is a single
+ * drawImage.  Flippers, whose pose changes as they turn, are painted directly.
+ * At most capacity variants are kept, the least recently drawn being evicted
+ * first.
+ */
+public class SpriteCache {
+
+    // pixels around the box of a gizmo, for the strokes along its edges.
+    private static final int PAD = 2;
+
+    private final int capacity;
+    private final Map<Key, BufferedImage> sprites;
+    // reused to look sprites up without allocating.
+    private final Key probe = new Key();
+
+    /**
+     * @param capacity the number of variants kept
+     */
+    public SpriteCache(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.sprites = new LinkedHashMap<Key, BufferedImage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest) {
+                return size() > SpriteCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @effects draws gizmo on g as gizmo.paint(g) would, g being scaled by
+     * scale from the coordinates of the board to its pixels; a gizmo without a
+     * color of its own is drawn in the current color of g.
+     */
+    public void paint(AbstractGizmo gizmo, Graphics2D g, double scale) {
+        if (gizmo instanceof Flipper) {
+            gizmo.paint(g);
+            return;
+        }
+        probe.set(gizmo, g.getColor(), scale);
+        BufferedImage sprite = sprites.get(probe);
+        if (sprite == null) {
+            sprite = rasterize(gizmo, g.getDeviceConfiguration(), g.getColor(), scale);
+            Key key = new Key();
+            key.set(gizmo, g.getColor(), scale);
+            sprites.put(key, sprite);
+        }
+        int size = 2 * (gizmo.r + PAD);
+        g.drawImage(sprite, gizmo.x - gizmo.r - PAD, gizmo.y - gizmo.r - PAD, size, size, null);
+    }
+
+    public int size() {
+        return sprites.size();
+    }
+
+    public void clear() {
+        sprites.clear();
+    }
+
+    private static BufferedImage rasterize(AbstractGizmo gizmo, GraphicsConfiguration configuration,
+                                           Color foreground, double scale) {
+        int pixels = (int) Math.ceil(2 * (gizmo.r + PAD) * scale);
+        BufferedImage sprite = configuration.createCompatibleImage(pixels, pixels, Transparency.TRANSLUCENT);
+        Graphics2D g = sprite.createGraphics();
+        // the graphics of an image start out white, not in the color painting would inherit.
+        g.setColor(foreground);
+        g.scale(scale, scale);
+        g.translate(-(gizmo.x - gizmo.r - PAD), -(gizmo.y - gizmo.r - PAD));
+        gizmo.paint(g);
+        g.dispose();
+        return sprite;
+    }
+
+    private static final class Key {
+        private Class<?> type;
+        private int r;
+        private int degree;
+        private Color color;
+        private double scale;
+
+        void set(AbstractGizmo gizmo, Color foreground, double scale) {
+            this.type = gizmo.getClass();
+            this.r = gizmo.r;
+            this.degree = Math.floorMod(gizmo.degree, 360);
+            this.color = gizmo.color != null ? gizmo.color : foreground;
+            this.scale = scale;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return type == key.type && r == key.r && degree == key.degree
+                    && Objects.equals(color, key.color) && scale == key.scale;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = type.hashCode();
+            h = 31 * h + r;
+            h = 31 * h + degree;
+            h = 31 * h + Objects.hashCode(color);
+            return 31 * h + Double.hashCode(scale);
+        }
+    }
+}
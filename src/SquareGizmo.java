@@ -11,18 +11,22 @@ import java.io.File;
 
 public class SquareGizmo extends AbstractGizmo {
 
-    public SquareGizmo(AnimationWindow animationWindow) {
-        super(animationWindow);
+    public SquareGizmo(SimulationEngine engine) {
+        super(engine);
         if(isTrack()) color=Color.BLACK;
         else color=Color.GREEN;
-        makeSquare();
     }
-    public SquareGizmo(int x, int y, int r, int degree, boolean crashMove,  AnimationWindow animationWindow) {
-        super(x,y,r,degree,crashMove,animationWindow);
+    public SquareGizmo(int x, int y, int r, int degree, boolean crashMove,  SimulationEngine engine) {
+        super(x,y,r,degree,crashMove,engine);
         if(isTrack()) color=Color.BLACK;
         else color=Color.GREEN;
+    }
+
+    @Override
+    protected void makeGeometry() {
         makeSquare();
     }
+
     public void makeSquare(){
         lines.clear();
         corners.clear();
@@ -44,10 +48,9 @@ public class SquareGizmo extends AbstractGizmo {
     @Override
     public void paint(Graphics g) {
 
-        Rectangle clipRect = g.getClipBounds();
         Graphics2D g2d=(Graphics2D)g;
         g2d.setColor(color);
-        makeSquare();
+        validateGeometry();
         for(LineSegment lineSegment:lines){
             Line2D.Double d=lineSegment.toLine2D();
             g2d.draw(d);
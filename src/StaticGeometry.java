@@ -0,0 +1,208 @@
+import physics.Circle;
+import physics.LineSegment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Overview: StaticGeometry compiles the collision features of the gizmos that
+ * never move during a run (no flippers, no crash-move gizmos) into fewer
+ * features for the collision index.  Adjacent gizmos, like the clusters of
+ * 1x1 squares of presure-test.gizmo, share edges and corners that a ball can
+ * never reach or that duplicate one another:
+ * - collinear edges are cut where they overlap; parts covered twice are the
+ *   back-to-back edges between two gizmos and are dropped, and what is left is
+ *   merged into the longest straight segments possible;
+ * - coincident corners are welded into one, and zero-radius corners that are
+ *   no longer the end of any segment (the inside of a straight wall or of a
+ *   cluster) are dropped.
+ * Only gizmos that react alike to a ball (plain, tracker or absorber) are
+ * merged together, and every merged segment keeps which gizmo owns each of its
+ * parts (see CollisionInfo.getGizmoAt()).
+ */
+public class StaticGeometry {
+
+    // distances below this are treated as equal, well above the rounding of rotateAround().
+    private static final double EPSILON = 1e-6;
+
+    private StaticGeometry() {
+    }
+
+    /**
+     * @return true if gizmo keeps its geometry during a run, so its features may be merged.
+     */
+    public static boolean isStatic(AbstractGizmo gizmo) {
+        return !(gizmo instanceof Flipper) && !gizmo.isCrashMove();
+    }
+
+    /**
+     * @return the merged features of the static gizmos among gizmos.
+     */
+    public static List<CollisionInfo> compile(List<AbstractGizmo> gizmos) {
+        // the segments of every line (and kind of gizmo), and the corners of every kind.
+        Map<String, List<Piece>> lines = new LinkedHashMap<>();
+        Map<Integer, List<CollisionInfo>> corners = new LinkedHashMap<>();
+        for (AbstractGizmo gizmo : gizmos) {
+            if (!isStatic(gizmo)) continue;
+            int kind = kind(gizmo);
+            for (LineSegment line : gizmo.getLines()) {
+                Piece piece = Piece.of(gizmo, line);
+                if (piece == null) continue;
+                lines.computeIfAbsent(kind + ":" + piece.key(), k -> new ArrayList<>()).add(piece);
+            }
+            for (Circle corner : gizmo.getCorners()) {
+                corners.computeIfAbsent(kind, k -> new ArrayList<>()).add(new CollisionInfo(gizmo, corner));
+            }
+        }
+
+        List<CollisionInfo> features = new ArrayList<>();
+        Set<String> ends = new HashSet<>();
+        for (List<Piece> pieces : lines.values()) {
+            for (CollisionInfo segment : merge(pieces)) {
+                features.add(segment);
+                ends.add(pointKey(segment.getLineSegment().p1().x(), segment.getLineSegment().p1().y()));
+                ends.add(pointKey(segment.getLineSegment().p2().x(), segment.getLineSegment().p2().y()));
+            }
+        }
+        for (List<CollisionInfo> list : corners.values()) {
+            Set<String> welded = new HashSet<>();
+            for (CollisionInfo corner : list) {
+                Circle circle = corner.getCircle();
+                String at = pointKey(circle.getCenter().x(), circle.getCenter().y());
+                if (!welded.add(at + " " + Math.round(circle.getRadius() / EPSILON))) continue;
+                if (circle.getRadius() == 0 && !ends.contains(at)) continue;
+                features.add(corner);
+            }
+        }
+        return features;
+    }
+
+    /**
+     * Cuts the collinear pieces at every endpoint, drops what two or more of
+     * them cover, and joins the rest into maximal segments.
+     */
+    private static List<CollisionInfo> merge(List<Piece> pieces) {
+        List<Double> cuts = new ArrayList<>();
+        for (Piece piece : pieces) {
+            cuts.add(piece.from);
+            cuts.add(piece.to);
+        }
+        Collections.sort(cuts);
+        Piece first = pieces.get(0);
+        List<CollisionInfo> merged = new ArrayList<>();
+        List<AbstractGizmo> owners = new ArrayList<>();
+        List<Double> ownerEnds = new ArrayList<>();
+        double runFrom = 0, runTo = 0;
+        boolean inRun = false;
+        for (int i = 0; i + 1 < cuts.size(); i++) {
+            double from = cuts.get(i), to = cuts.get(i + 1);
+            if (to - from < EPSILON) continue;
+            Piece cover = null;
+            int covered = 0;
+            for (Piece piece : pieces) {
+                if (piece.from <= from + EPSILON && piece.to >= to - EPSILON) {
+                    cover = piece;
+                    covered++;
+                }
+            }
+            if (covered == 1 && inRun && from - runTo < EPSILON) {
+                if (owners.get(owners.size() - 1) != cover.gizmo) {
+                    owners.add(cover.gizmo);
+                    ownerEnds.add(to);
+                } else {
+                    ownerEnds.set(ownerEnds.size() - 1, to);
+                }
+                runTo = to;
+                continue;
+            }
+            if (inRun) merged.add(first.segment(runFrom, runTo, owners, ownerEnds));
+            inRun = covered == 1;
+            owners.clear();
+            ownerEnds.clear();
+            if (inRun) {
+                runFrom = from;
+                runTo = to;
+                owners.add(cover.gizmo);
+                ownerEnds.add(to);
+            }
+        }
+        if (inRun) merged.add(first.segment(runFrom, runTo, owners, ownerEnds));
+        return merged;
+    }
+
+    /**
+     * @return 2 for absorbers, 1 for trackers and 0 for the gizmos a ball bounces off.
+     */
+    private static int kind(AbstractGizmo gizmo) {
+        if (gizmo.getClass() == AbsorberGizmo.class) return 2;
+        return gizmo.isTracker() ? 1 : 0;
+    }
+
+    private static String pointKey(double x, double y) {
+        return Math.round(x / EPSILON) + "," + Math.round(y / EPSILON);
+    }
+
+    /**
+     * Snaps v to the nearest integer if it is only off by rounding, as gizmo
+     * coordinates are integers before they are rotated.
+     */
+    private static double snap(double v) {
+        double rounded = Math.rint(v);
+        return Math.abs(v - rounded) < EPSILON ? rounded : v;
+    }
+
+    /**
+     * An edge of a gizmo, as the interval [from, to] along its line: the
+     * points dx*t - dy*offset, dy*t + dx*offset for a unit direction (dx, dy)
+     * pointing right (or down when vertical).
+     */
+    private static class Piece {
+        private final AbstractGizmo gizmo;
+        private final double dx, dy, offset;
+        private final double from, to;
+
+        private Piece(AbstractGizmo gizmo, double dx, double dy, double offset, double from, double to) {
+            this.gizmo = gizmo;
+            this.dx = dx;
+            this.dy = dy;
+            this.offset = offset;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * @return the piece of line, or null if it has no length.
+         */
+        static Piece of(AbstractGizmo gizmo, LineSegment line) {
+            double x1 = line.p1().x(), y1 = line.p1().y(), x2 = line.p2().x(), y2 = line.p2().y();
+            double length = Math.sqrt((x2 - x1) * (x2 - x1) + (y2 - y1) * (y2 - y1));
+            if (length < EPSILON) return null;
+            double dx = (x2 - x1) / length, dy = (y2 - y1) / length;
+            if (dx < -EPSILON || (Math.abs(dx) <= EPSILON && dy < 0)) {
+                dx = -dx;
+                dy = -dy;
+            }
+            double offset = -dy * x1 + dx * y1;
+            double t1 = dx * x1 + dy * y1, t2 = dx * x2 + dy * y2;
+            return new Piece(gizmo, dx, dy, offset, Math.min(t1, t2), Math.max(t1, t2));
+        }
+
+        String key() {
+            return Math.round(dx / EPSILON) + "," + Math.round(dy / EPSILON) + "," + Math.round(offset * 1e4);
+        }
+
+        CollisionInfo segment(double from, double to, List<AbstractGizmo> owners, List<Double> ownerEnds) {
+            LineSegment line = new LineSegment(snap(dx * from - dy * offset), snap(dy * from + dx * offset),
+                    snap(dx * to - dy * offset), snap(dy * to + dx * offset));
+            if (owners.size() == 1) return new CollisionInfo(owners.get(0), line);
+            double[] ends = new double[ownerEnds.size()];
+            for (int i = 0; i < ends.length; i++) ends[i] = (ownerEnds.get(i) - from) / (to - from);
+            return new CollisionInfo(line, owners.toArray(new AbstractGizmo[0]), ends);
+        }
+    }
+}
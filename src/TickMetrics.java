@@ -0,0 +1,159 @@
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Overview: TickMetrics records where the time of the frames of a running
+ * simulation goes: a LatencyHistogram of the duration of every tick and of
+ * each of its phases (moving the balls, detecting and resolving collisions),
+ * and of the window computing the region to repaint and painting it; and
+ * counters of collisions, absorber captures and collision features tested.
+ * A SimulationEngine records into the TickMetrics set on it, which can be
+ * registered as a platform MBean to be watched live over JMX.
+ * Recording is done by the thread that steps the engine, without locking.
+ */
+public class TickMetrics implements TickMetricsMBean {
+
+    public static final String OBJECT_NAME = "gizmoball:type=TickMetrics";
+
+    /**
+     * Overview: the phases of a frame that are timed.
+     */
+    public enum Phase {
+        TICK, MOVE, DETECT, RESOLVE, REPAINT_REGION, PAINT
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+    private long collisions;
+    private long absorberHits;
+    private long featuresTested;
+
+    public TickMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @modifies this
+     * @effects records that phase took nanos nanoseconds.
+     */
+    public void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    public LatencyHistogram getHistogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    /**
+     * @modifies this
+     * @effects counts a collision of a ball with a gizmo, captured by an absorber or not.
+     */
+    public void collision(boolean absorbed) {
+        collisions++;
+        if (absorbed) absorberHits++;
+    }
+
+    /**
+     * @modifies this
+     * @effects counts count collision features tested against a ball.
+     */
+    public void featuresTested(int count) {
+        featuresTested += count;
+    }
+
+    /**
+     * @modifies the platform MBean server
+     * @effects registers this as OBJECT_NAME, replacing the TickMetrics
+     * registered before, if any.
+     */
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(name);
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot register " + OBJECT_NAME, e);
+        }
+    }
+
+    @Override
+    public long getTicks() {
+        return getHistogram(Phase.TICK).getCount();
+    }
+
+    @Override
+    public double getTickP50Micros() {
+        return getHistogram(Phase.TICK).getPercentile(50) / 1e3;
+    }
+
+    @Override
+    public double getTickP99Micros() {
+        return getHistogram(Phase.TICK).getPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getTickMaxMicros() {
+        return getHistogram(Phase.TICK).getMax() / 1e3;
+    }
+
+    @Override
+    public String[] getPhaseSummary() {
+        Phase[] phases = Phase.values();
+        String[] summary = new String[phases.length];
+        for (int i = 0; i < phases.length; i++) {
+            LatencyHistogram histogram = histograms[i];
+            summary[i] = String.format("%s: n=%d p50=%.1fus p99=%.1fus max=%.1fus", phases[i].name().toLowerCase(),
+                    histogram.getCount(), histogram.getPercentile(50) / 1e3, histogram.getPercentile(99) / 1e3,
+                    histogram.getMax() / 1e3);
+        }
+        return summary;
+    }
+
+    @Override
+    public long getCollisions() {
+        return collisions;
+    }
+
+    @Override
+    public long getAbsorberHits() {
+        return absorberHits;
+    }
+
+    @Override
+    public long getFeaturesTested() {
+        return featuresTested;
+    }
+
+    @Override
+    public double getFeaturesTestedPerTick() {
+        long ticks = getTicks();
+        return ticks == 0 ? 0 : (double) featuresTested / ticks;
+    }
+
+    @Override
+    public double percentileMicros(String phase, double percentile) {
+        for (Phase p : Phase.values()) {
+            if (p.name().equalsIgnoreCase(phase)) return getHistogram(p).getPercentile(percentile) / 1e3;
+        }
+        return -1;
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        collisions = 0;
+        absorberHits = 0;
+        featuresTested = 0;
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Overview: the management interface of TickMetrics, as shown by JConsole
+ * and other JMX clients.  Durations are in microseconds.
+ */
+public interface TickMetricsMBean {
+
+    long getTicks();
+
+    double getTickP50Micros();
+
+    double getTickP99Micros();
+
+    double getTickMaxMicros();
+
+    /**
+     * @return a line per phase of a frame with its count and its p50, p99 and
+     * maximum duration.
+     */
+    String[] getPhaseSummary();
+
+    long getCollisions();
+
+    long getAbsorberHits();
+
+    long getFeaturesTested();
+
+    double getFeaturesTestedPerTick();
+
+    /**
+     * @return the duration that percentile percent of the durations of phase do
+     * not exceed, or -1 if there is no such phase.
+     */
+    double percentileMicros(String phase, double percentile);
+
+    /**
+     * Forgets every duration and count recorded.
+     */
+    void reset();
+}
@@ -0,0 +1,351 @@
+import physics.Circle;
+import physics.Geometry;
+import physics.LineSegment;
+import physics.Vect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Overview: a TimeOfImpactStepper advances a SimulationEngine event by event
+ * instead of a whole tick at a time.  It finds the earliest time of impact of
+ * any ball with a feature near its path, a wall of the world or another ball,
+ * advances exactly to it, resolves it and repeats until the tick is used up,
+ * so fast balls cannot tunnel and always reflect off the wall they hit first.
+ * Impact times are cached in a priority queue for the length of one tick
+ * only: within the tick they are only recomputed for the balls or gizmos
+ * whose state changed, and when an impact moves a gizmo, every ball flying
+ * near where it was or where it is now is scheduled again.  Gravity and
+ * friction change every velocity between ticks, so each step() clears the
+ * queue and schedules every ball afresh.
+ */
+public class TimeOfImpactStepper {
+
+    // upper bound on impacts resolved per ball in one tick, so a ball wedged between features cannot stall it.
+    private static final int MAX_IMPACTS_PER_BALL = 64;
+
+    private final SimulationEngine engine;
+    // the four walls of the world, owned by no gizmo.
+    private final List<CollisionInfo> walls;
+    private final PriorityQueue<Impact> queue;
+    private final ArrayList<CollisionInfo> candidates;
+    private final BallBroadphase broadphase;
+
+    // time up to which every ball has been advanced in the current tick, the
+    // straight line it flies from there, and the balls it may meet this tick;
+    // all indexed like the ball list of the engine.
+    private double[] clock = new double[0];
+    private Vect[] flight = new Vect[0];
+    private int[][] neighbours = new int[0][];
+    private int[] neighbourCount = new int[0];
+
+    // length of the current tick, in time units of 100ms.
+    private double end;
+    // bounds (min x, min y, max x, max y) of the features of a gizmo before
+    // and after an impact moved it.
+    private final double[] before = new double[4];
+    private final double[] after = new double[4];
+
+    public TimeOfImpactStepper(SimulationEngine engine) {
+        this.engine = engine;
+        int width = engine.getWidth();
+        int height = engine.getHeight();
+        this.walls = new ArrayList<>();
+        walls.add(new CollisionInfo(null, new LineSegment(0, 0, width, 0)));
+        walls.add(new CollisionInfo(null, new LineSegment(0, 0, 0, height)));
+        walls.add(new CollisionInfo(null, new LineSegment(width, 0, width, height)));
+        walls.add(new CollisionInfo(null, new LineSegment(0, height, width, height)));
+        this.queue = new PriorityQueue<>();
+        this.candidates = new ArrayList<>();
+        this.broadphase = new BallBroadphase();
+    }
+
+    /**
+     * @param interval length of the tick in milliseconds
+     * @modifies the balls of the engine and the gizmos they crash-move
+     * @effects advances the world by interval, resolving every impact on the way in time order.
+     */
+    public void step(double interval) {
+        List<BouncingBall> balls = engine.getBalls();
+        int n = balls.size();
+        end = interval / 100;
+        queue.clear();
+        prepare(balls);
+        for (int i = 0; i < n; i++) {
+            if (balls.get(i).isInPlay()) schedule(balls, i, false);
+        }
+        int impacts = 0;
+        while (!queue.isEmpty() && impacts < MAX_IMPACTS_PER_BALL * n) {
+            Impact impact = queue.poll();
+            if (impact.time > end) break;
+            if (isStale(balls, impact)) continue;
+            impacts++;
+            BouncingBall ball = balls.get(impact.ball);
+            advanceTo(ball, impact.ball, impact.time);
+            if (impact.other >= 0) {
+                BouncingBall other = balls.get(impact.other);
+                advanceTo(other, impact.other, impact.time);
+                SimulationEngine.reflectBalls(ball, other);
+                schedule(balls, impact.ball, true);
+                schedule(balls, impact.other, true);
+            } else {
+                AbstractGizmo gizmo = impact.feature.getGizmo();
+                int version = gizmo == null ? 0 : gizmo.getGeometryVersion();
+                if (gizmo != null) bounds(gizmo, before);
+                if (resolve(ball, impact.feature)) schedule(balls, impact.ball, true);
+                if (gizmo != null && gizmo.getGeometryVersion() != version) {
+                    // the impact moved the gizmo: impacts with where it was are stale now.
+                    bounds(gizmo, after);
+                    rescheduleNear(balls, impact.ball, impact.time);
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            BouncingBall ball = balls.get(i);
+            if (!ball.isInPlay()) continue;
+            fly(ball, end - clock[i]);
+            // rounding can leave the ball a hair outside after grazing a wall.
+            ball.confine();
+        }
+    }
+
+    /**
+     * Resets the clocks, computes the flight of every ball over the whole tick
+     * and finds the pairs of balls that may meet in it with the broadphase.
+     */
+    private void prepare(List<BouncingBall> balls) {
+        int n = balls.size();
+        if (clock.length != n) {
+            clock = new double[n];
+            flight = new Vect[n];
+            neighbours = new int[n][];
+            neighbourCount = new int[n];
+            for (int i = 0; i < n; i++) neighbours[i] = new int[4];
+        }
+        Arrays.fill(clock, 0);
+        Arrays.fill(neighbourCount, 0);
+        for (int i = 0; i < n; i++) {
+            flight[i] = balls.get(i).flightVelocity(end);
+        }
+        if (n < 2) return;
+        broadphase.update(balls, end);
+        for (int k = 0; k < broadphase.getPairCount(); k++) {
+            link(broadphase.getFirst(k), broadphase.getSecond(k));
+        }
+    }
+
+    /**
+     * Moves ball through the rest of the tick once no impact is left in it.  Half
+     * of the gravity is applied before the straight-line move and half after it,
+     * which is the same straight line as ball.flightVelocity(time).
+     */
+    private static void fly(BouncingBall ball, double time) {
+        ball.applyForces(time / 2);
+        ball.advance(time);
+        ball.applyForces(time / 2);
+    }
+
+    private void advanceTo(BouncingBall ball, int i, double time) {
+        ball.advanceToImpact(time - clock[i], flight[i]);
+        clock[i] = time;
+    }
+
+    /**
+     * @return false if the ball left the game (absorbed).
+     */
+    private boolean resolve(BouncingBall ball, CollisionInfo feature) {
+        if (feature.getGizmo() == null) {
+            ball.reflect(feature);
+            return true;
+        }
+        engine.resolve(ball, feature);
+        return ball.isInPlay();
+    }
+
+    /**
+     * Computes the impact times of ball i with every feature and ball it can
+     * reach before the end of the tick, along the straight line it flies for
+     * the rest of the tick, and queues them.
+     *
+     * @param allNeighbours false to only pair i with the balls after it, when
+     *                      every ball is scheduled at the start of a tick.
+     */
+    private void schedule(List<BouncingBall> balls, int i, boolean allNeighbours) {
+        BouncingBall ball = balls.get(i);
+        double now = clock[i];
+        double span = end - now;
+        Vect velocity = ball.flightVelocity(span);
+        flight[i] = velocity;
+        Circle c = new Circle(ball.getX(), ball.getY(), ball.getRadius());
+        double dx = velocity.x() * span;
+        double dy = velocity.y() * span;
+        double reach = ball.getRadius() + 1;
+        double minX = Math.min(ball.getX(), ball.getX() + dx) - reach;
+        double minY = Math.min(ball.getY(), ball.getY() + dy) - reach;
+        double maxX = Math.max(ball.getX(), ball.getX() + dx) + reach;
+        double maxY = Math.max(ball.getY(), ball.getY() + dy) + reach;
+        candidates.clear();
+        candidates.ensureCapacity(engine.getCollisionGrid().featureCount());
+        engine.getCollisionGrid().query(minX, minY, maxX, maxY, candidates);
+        candidates.addAll(walls);
+        for (CollisionInfo feature : candidates) {
+            double time = timeOfImpact(feature, c, velocity);
+            if (time >= 0 && time <= span) {
+                queue.add(new Impact(now + time, i, ball.getVersion(), feature));
+            }
+        }
+        if (balls.size() < 2) return;
+        if (!broadphase.covers(i, minX, minY, maxX, maxY)) {
+            // a collision with another ball sped this one up beyond its box.
+            broadphase.grow(i, minX, minY, maxX, maxY);
+            for (int j = 0; j < balls.size(); j++) {
+                if (j != i && broadphase.overlaps(i, j)) link(i, j);
+            }
+        }
+        for (int k = 0; k < neighbourCount[i]; k++) {
+            int j = neighbours[i][k];
+            if (!allNeighbours && j < i) continue;
+            BouncingBall other = balls.get(j);
+            if (!other.isInPlay()) continue;
+            // where the other ball is now, on the line it has been flying since its own clock.
+            double lag = now - clock[j];
+            Circle otherCircle = new Circle(other.getX() + flight[j].x() * lag,
+                    other.getY() + flight[j].y() * lag, other.getRadius());
+            double time = Geometry.timeUntilBallBallCollision(c, velocity, otherCircle, flight[j]);
+            if (time >= 0 && time <= span) {
+                queue.add(new Impact(now + time, i, ball.getVersion(), j, other.getVersion()));
+            }
+        }
+    }
+
+    /**
+     * Advances to time and schedules again every ball but the one at index
+     * except whose flight through the rest of the tick comes near the old or
+     * the new bounds of a gizmo that just moved.
+     */
+    private void rescheduleNear(List<BouncingBall> balls, int except, double time) {
+        for (int j = 0; j < balls.size(); j++) {
+            BouncingBall ball = balls.get(j);
+            if (j == except || !ball.isInPlay()) continue;
+            double span = end - clock[j];
+            double dx = flight[j].x() * span;
+            double dy = flight[j].y() * span;
+            double reach = ball.getRadius() + 1;
+            double minX = Math.min(ball.getX(), ball.getX() + dx) - reach;
+            double minY = Math.min(ball.getY(), ball.getY() + dy) - reach;
+            double maxX = Math.max(ball.getX(), ball.getX() + dx) + reach;
+            double maxY = Math.max(ball.getY(), ball.getY() + dy) + reach;
+            if (overlaps(before, minX, minY, maxX, maxY) || overlaps(after, minX, minY, maxX, maxY)) {
+                advanceTo(ball, j, time);
+                schedule(balls, j, true);
+            }
+        }
+    }
+
+    private static boolean overlaps(double[] bounds, double minX, double minY, double maxX, double maxY) {
+        return bounds[0] <= maxX && minX <= bounds[2] && bounds[1] <= maxY && minY <= bounds[3];
+    }
+
+    /**
+     * @modifies out
+     * @effects sets out to the bounds of the segments and corners of gizmo.
+     */
+    private static void bounds(AbstractGizmo gizmo, double[] out) {
+        out[0] = out[1] = Double.POSITIVE_INFINITY;
+        out[2] = out[3] = Double.NEGATIVE_INFINITY;
+        List<LineSegment> lines = gizmo.getLines();
+        for (int i = 0; i < lines.size(); i++) {
+            LineSegment line = lines.get(i);
+            include(out, line.p1().x(), line.p1().y(), 0);
+            include(out, line.p2().x(), line.p2().y(), 0);
+        }
+        List<Circle> corners = gizmo.getCorners();
+        for (int i = 0; i < corners.size(); i++) {
+            Circle corner = corners.get(i);
+            include(out, corner.getCenter().x(), corner.getCenter().y(), corner.getRadius());
+        }
+    }
+
+    private static void include(double[] bounds, double x, double y, double radius) {
+        bounds[0] = Math.min(bounds[0], x - radius);
+        bounds[1] = Math.min(bounds[1], y - radius);
+        bounds[2] = Math.max(bounds[2], x + radius);
+        bounds[3] = Math.max(bounds[3], y + radius);
+    }
+
+    private void link(int i, int j) {
+        for (int k = 0; k < neighbourCount[i]; k++) {
+            if (neighbours[i][k] == j) return;
+        }
+        addNeighbour(i, j);
+        addNeighbour(j, i);
+    }
+
+    private void addNeighbour(int i, int j) {
+        if (neighbourCount[i] == neighbours[i].length) {
+            neighbours[i] = Arrays.copyOf(neighbours[i], neighbours[i].length * 2);
+        }
+        neighbours[i][neighbourCount[i]++] = j;
+    }
+
+    private static boolean isStale(List<BouncingBall> balls, Impact impact) {
+        if (balls.get(impact.ball).getVersion() != impact.ballVersion) return true;
+        if (impact.other >= 0) return balls.get(impact.other).getVersion() != impact.otherVersion;
+        AbstractGizmo gizmo = impact.feature.getGizmo();
+        return gizmo != null && gizmo.getGeometryVersion() != impact.otherVersion;
+    }
+
+    private static double timeOfImpact(CollisionInfo feature, Circle ball, Vect velocity) {
+        if (BouncingBall.isTurningFlipper(feature.getGizmo())) {
+            Flipper flipper = (Flipper) feature.getGizmo();
+            if (feature.getLineSegment() != null)
+                return Geometry.timeUntilRotatingWallCollision(feature.getLineSegment(), flipper.getPivot(),
+                        flipper.getAngularVelocity(), ball, velocity);
+            return Geometry.timeUntilRotatingCircleCollision(feature.getCircle(), flipper.getPivot(),
+                    flipper.getAngularVelocity(), ball, velocity);
+        }
+        if (feature.getLineSegment() != null)
+            return Geometry.timeUntilWallCollision(feature.getLineSegment(), ball, velocity);
+        return Geometry.timeUntilCircleCollision(feature.getCircle(), ball, velocity);
+    }
+
+    /**
+     * A cached impact time of a ball with a feature or with another ball, valid
+     * as long as neither of them changed since it was computed.
+     */
+    private static class Impact implements Comparable<Impact> {
+        private final double time;
+        private final int ball;
+        private final int ballVersion;
+        // the other ball, or -1 for an impact with feature.
+        private final int other;
+        private final CollisionInfo feature;
+        // version of the other ball, or geometry version of the gizmo owning feature.
+        private final int otherVersion;
+
+        Impact(double time, int ball, int ballVersion, CollisionInfo feature) {
+            this.time = time;
+            this.ball = ball;
+            this.ballVersion = ballVersion;
+            this.other = -1;
+            this.feature = feature;
+            this.otherVersion = feature.getGizmo() == null ? 0 : feature.getGizmo().getGeometryVersion();
+        }
+
+        Impact(double time, int ball, int ballVersion, int other, int otherVersion) {
+            this.time = time;
+            this.ball = ball;
+            this.ballVersion = ballVersion;
+            this.other = other;
+            this.feature = null;
+            this.otherVersion = otherVersion;
+        }
+
+        @Override
+        public int compareTo(Impact o) {
+            return Double.compare(time, o.time);
+        }
+    }
+}
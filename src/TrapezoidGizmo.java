@@ -7,18 +7,22 @@ import java.awt.geom.Line2D;
 
 public class TrapezoidGizmo extends AbstractGizmo {
 
-    public TrapezoidGizmo(AnimationWindow animationWindow) {
-        super(animationWindow);
+    public TrapezoidGizmo(SimulationEngine engine) {
+        super(engine);
         if(isTrack()) color=Color.BLACK;
         else color=Color.ORANGE;
-        makeTrapezoid();
     }
-    public TrapezoidGizmo(int x, int y, int r, int degree, boolean crashMove,  AnimationWindow animationWindow) {
-        super(x,y,r,degree,crashMove,animationWindow);
+    public TrapezoidGizmo(int x, int y, int r, int degree, boolean crashMove,  SimulationEngine engine) {
+        super(x,y,r,degree,crashMove,engine);
         if(isTrack()) color=Color.BLACK;
         else color=Color.ORANGE;
+    }
+
+    @Override
+    protected void makeGeometry() {
         makeTrapezoid();
     }
+
     public void makeTrapezoid(){
         lines.clear();
         corners.clear();
@@ -38,14 +42,14 @@ public class TrapezoidGizmo extends AbstractGizmo {
 
     @Override
     public Rectangle[] boundingBoxes() {
-        Rectangle[] rectangles=new Rectangle[2*r/animationWindow.getSizePerUnit()];
+        Rectangle[] rectangles=new Rectangle[2*r/SimulationEngine.getSizePerUnit()];
         int tmp=r/2;
-        for(int i=0;i<2*r/animationWindow.getSizePerUnit();i++){
-            int emptyUnitLength=(tmp-animationWindow.getSizePerUnit()/4)/animationWindow.getSizePerUnit()*animationWindow.getSizePerUnit();
+        for(int i=0;i<2*r/SimulationEngine.getSizePerUnit();i++){
+            int emptyUnitLength=(tmp-SimulationEngine.getSizePerUnit()/4)/SimulationEngine.getSizePerUnit()*SimulationEngine.getSizePerUnit();
             System.out.println("e="+i+" "+emptyUnitLength);
-            rectangles[i]=new Rectangle(x-r+emptyUnitLength,y-r+i*animationWindow.getSizePerUnit(),
-                    2*r-2*emptyUnitLength,animationWindow.getSizePerUnit());
-            tmp-=animationWindow.getSizePerUnit()/4;
+            rectangles[i]=new Rectangle(x-r+emptyUnitLength,y-r+i*SimulationEngine.getSizePerUnit(),
+                    2*r-2*emptyUnitLength,SimulationEngine.getSizePerUnit());
+            tmp-=SimulationEngine.getSizePerUnit()/4;
         }
         return rectangles;
     }
@@ -53,10 +57,9 @@ public class TrapezoidGizmo extends AbstractGizmo {
     @Override
     public void paint(Graphics g) {
 
-        Rectangle clipRect = g.getClipBounds();
         Graphics2D g2d=(Graphics2D)g;
         g2d.setColor(color);
-        makeTrapezoid();
+        validateGeometry();
         for(LineSegment lineSegment:lines){
             Line2D.Double d=lineSegment.toLine2D();
             g2d.draw(d);
@@ -11,16 +11,22 @@ import java.util.List;
 
 public class TriangleGizmo extends AbstractGizmo {
 
-    public TriangleGizmo(AnimationWindow animationWindow) {
-        super(animationWindow);
+    public TriangleGizmo(SimulationEngine engine) {
+        super(engine);
+        if(isTrack()) color=Color.BLACK;
+        else color=Color.BLUE;
+    }
+    public TriangleGizmo(int x, int y, int r, int degree, boolean crashMove,  SimulationEngine engine) {
+        super(x,y,r,degree,crashMove,engine);
         if(isTrack()) color=Color.BLACK;
         else color=Color.BLUE;
-        makeTriangle();
     }
-    public TriangleGizmo(int x, int y, int r, int degree, boolean crashMove,  AnimationWindow animationWindow) {
-        super(x,y,r,degree,crashMove,animationWindow);
+
+    @Override
+    protected void makeGeometry() {
         makeTriangle();
     }
+
     public void makeTriangle(){
         lines.clear();
         corners.clear();
@@ -40,10 +46,9 @@ public class TriangleGizmo extends AbstractGizmo {
     @Override
     public void paint(Graphics g) {
 
-        Rectangle clipRect = g.getClipBounds();
         Graphics2D g2d=(Graphics2D)g;
         g2d.setColor(color);
-        makeTriangle();
+        validateGeometry();
         for(LineSegment lineSegment:lines){
             Line2D.Double d=lineSegment.toLine2D();
             g2d.draw(d);
@@ -0,0 +1,184 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Overview: a WorldHistory keeps the last frames of a SimulationEngine in a
+ * fixed-size ring buffer, so a run can be rewound or scrubbed through without
+ * simulating it again.  A frame holds everything a tick can change: the
+ * position, velocity and state of every ball, the position of every
+ * crash-move gizmo and the turn of every flipper.  Frames are stored in
+ * preallocated primitive arrays, so capturing one every tick only copies a
+ * few numbers per ball and moving gizmo and allocates nothing.
+ * The layout follows the balls and gizmos of the engine at the first capture
+ * after clear(); if their number changes, the history starts over.
+ */
+public class WorldHistory {
+
+    private static final int BALL_FIELDS = 4;
+
+    private final int capacity;
+
+    // the objects captured, in the order of their slots in a frame.
+    private final List<BouncingBall> balls = new ArrayList<>();
+    private final List<AbstractGizmo> movers = new ArrayList<>();
+    private final List<Flipper> flippers = new ArrayList<>();
+    private int gizmoCount = -1;
+
+    // frame f starts at f * balls.size() * BALL_FIELDS in ballState (x, y, vx, vy),
+    // f * balls.size() in ballInPlay, and so on.
+    private double[] ballState = new double[0];
+    private boolean[] ballInPlay = new boolean[0];
+    private int[] moverX = new int[0];
+    private int[] moverY = new int[0];
+    private double[] flipperTurn = new double[0];
+    private boolean[] flipperFlipped = new boolean[0];
+    private long[] ticks;
+
+    // slot of the latest frame, and the number of frames held.
+    private int head = -1;
+    private int size;
+
+    /**
+     * @param capacity number of frames kept; older frames are overwritten.
+     */
+    public WorldHistory(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.ticks = new long[capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of frames held.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @modifies this
+     * @effects forgets every frame; the next capture lays the frames out anew.
+     */
+    public void clear() {
+        head = -1;
+        size = 0;
+        gizmoCount = -1;
+    }
+
+    /**
+     * @modifies this
+     * @effects records the state of engine as the latest frame, overwriting the
+     * oldest one if the history is full.
+     */
+    public void capture(SimulationEngine engine) {
+        if (!matches(engine)) layout(engine);
+        head = head + 1 == capacity ? 0 : head + 1;
+        if (size < capacity) size++;
+        ticks[head] = engine.getTickCount();
+        int b = head * balls.size();
+        for (int i = 0; i < balls.size(); i++, b++) {
+            BouncingBall ball = balls.get(i);
+            int k = b * BALL_FIELDS;
+            ballState[k] = ball.getX();
+            ballState[k + 1] = ball.getY();
+            ballState[k + 2] = ball.getVx();
+            ballState[k + 3] = ball.getVy();
+            ballInPlay[b] = ball.isInPlay();
+        }
+        int m = head * movers.size();
+        for (int i = 0; i < movers.size(); i++, m++) {
+            moverX[m] = movers.get(i).x;
+            moverY[m] = movers.get(i).y;
+        }
+        int f = head * flippers.size();
+        for (int i = 0; i < flippers.size(); i++, f++) {
+            flipperTurn[f] = flippers.get(i).getTurn();
+            flipperFlipped[f] = flippers.get(i).isFlipped();
+        }
+    }
+
+    /**
+     * @return the tick count of the engine at the frame age frames before the latest.
+     */
+    public long getTick(int age) {
+        return ticks[slot(age)];
+    }
+
+    /**
+     * @modifies the balls and gizmos of the engine captured
+     * @effects puts them back in the state of the frame age frames before the
+     * latest one, keeping every frame.
+     */
+    public void restore(SimulationEngine engine, int age) {
+        int slot = slot(age);
+        int b = slot * balls.size();
+        for (int i = 0; i < balls.size(); i++, b++) {
+            BouncingBall ball = balls.get(i);
+            int k = b * BALL_FIELDS;
+            ball.setPosition(ballState[k], ballState[k + 1]);
+            ball.setVelocity(ballState[k + 2], ballState[k + 3]);
+            if (!ballInPlay[b]) ball.remove();
+        }
+        int m = slot * movers.size();
+        for (int i = 0; i < movers.size(); i++, m++) {
+            movers.get(i).setPosition(moverX[m], moverY[m]);
+        }
+        int f = slot * flippers.size();
+        for (int i = 0; i < flippers.size(); i++, f++) {
+            flippers.get(i).setPose(flipperTurn[f], flipperFlipped[f]);
+        }
+        engine.markBoardChanged();
+    }
+
+    /**
+     * @modifies this and the engine captured
+     * @effects restores the frame age frames before the latest and drops the
+     * frames after it, so the run goes on from there.
+     */
+    public void rewind(SimulationEngine engine, int age) {
+        restore(engine, age);
+        head = slot(age);
+        size -= age;
+    }
+
+    private int slot(int age) {
+        if (age < 0 || age >= size) throw new IndexOutOfBoundsException("no frame " + age + " back in " + size);
+        int slot = head - age;
+        return slot < 0 ? slot + capacity : slot;
+    }
+
+    /**
+     * @return true if the balls and gizmos of engine are those of the frames held.
+     */
+    private boolean matches(SimulationEngine engine) {
+        List<BouncingBall> current = engine.getBalls();
+        if (current.size() != balls.size() || engine.getGizmoList().size() != gizmoCount) return false;
+        for (int i = 0; i < current.size(); i++) {
+            if (current.get(i) != balls.get(i)) return false;
+        }
+        return true;
+    }
+
+    private void layout(SimulationEngine engine) {
+        head = -1;
+        size = 0;
+        balls.clear();
+        balls.addAll(engine.getBalls());
+        movers.clear();
+        for (AbstractGizmo gizmo : engine.getGizmoList()) {
+            if (gizmo.isCrashMove()) movers.add(gizmo);
+        }
+        flippers.clear();
+        flippers.addAll(engine.getFlipperList());
+        gizmoCount = engine.getGizmoList().size();
+        ballState = new double[capacity * balls.size() * BALL_FIELDS];
+        ballInPlay = new boolean[capacity * balls.size()];
+        moverX = new int[capacity * movers.size()];
+        moverY = new int[capacity * movers.size()];
+        flipperTurn = new double[capacity * flippers.size()];
+        flipperFlipped = new boolean[capacity * flippers.size()];
+    }
+}
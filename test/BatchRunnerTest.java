@@ -0,0 +1,76 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Overview: checks that the Result of a BatchRunner depends on the seed
+ * only, not on how many threads the runs are split over: a batch run on
+ * pools of one and of four threads has the same runs, absorptions, absorb
+ * times and hits on every gizmo.
+ */
+public class BatchRunnerTest {
+
+    private static final int RUNS = 64;
+    private static final double SECONDS = 8;
+    private static final long SEED = 20240611L;
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void resultDoesNotDependOnThePool() throws IOException {
+        BatchRunner runner = new BatchRunner(board());
+        BatchRunner.Result alone = run(runner, 1);
+        BatchRunner.Result split = run(runner, 4);
+
+        assertEquals(RUNS, alone.getRuns());
+        assertTrue(alone.getAbsorbed() > 0, "no run ended in the absorber");
+        assertEquals(alone.getRuns(), split.getRuns());
+        assertEquals(alone.getAbsorbed(), split.getAbsorbed());
+        assertEquals(alone.getMeanAbsorbTime(), split.getMeanAbsorbTime());
+        assertEquals(alone.getMinAbsorbTime(), split.getMinAbsorbTime());
+        assertEquals(alone.getMaxAbsorbTime(), split.getMaxAbsorbTime());
+        for (int i = 0; i < runner.getGizmoCount(); i++) {
+            assertEquals(alone.getHits(i), split.getHits(i), runner.getGizmoName(i));
+        }
+    }
+
+    private static BatchRunner.Result run(BatchRunner runner, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return runner.run(pool, RUNS, SECONDS, SEED);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // a floor of absorbers under a few bumpers, so most runs end early.
+    private File board() throws IOException {
+        SimulationEngine engine = new SimulationEngine();
+        int unit = SimulationEngine.getSizePerUnit();
+        List<AbstractGizmo> gizmos = Arrays.asList(
+                new SquareGizmo(5 * unit + unit / 2, 8 * unit + unit / 2, unit / 2, 0, false, engine),
+                new CircleGizmo(10 * unit + unit / 2, 6 * unit + unit / 2, unit / 2, 0, false, engine),
+                new TriangleGizmo(14 * unit, 10 * unit, unit, 90, false, engine),
+                new LTypeGizmo(4 * unit, 14 * unit, unit, 0, false, engine));
+        File file = new File(directory, "batch.gizmo");
+        try (Writer out = new FileWriter(file)) {
+            FileSolver.write(out, gizmos);
+            int y = SimulationEngine.getWindowUnitHeight() * unit - unit / 2;
+            for (int x = unit / 2; x < SimulationEngine.getWindowUnitWidth() * unit; x += unit) {
+                FileSolver.write(out, Arrays.asList(new AbsorberGizmo(x, y, unit / 2, 0, false, engine)));
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,76 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Overview: checks that BinaryBoard reads back the board it wrote, gizmo by
+ * gizmo, and that a file with any one byte flipped after its header, or in
+ * its checksum, is refused as damaged.
+ */
+public class BinaryBoardTest {
+
+    // magic, version, record size, type count, record count; the checksum follows.
+    private static final int CHECKED_HEADER = 16;
+
+    private final SimulationEngine engine = new SimulationEngine();
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void readsBackWhatItWrites() throws IOException {
+        List<AbstractGizmo> board = board();
+        File file = new File(directory, "board." + BinaryBoard.EXTENSION);
+        BinaryBoard.write(file, board);
+        List<AbstractGizmo> read = BinaryBoard.read(file, engine);
+        assertEquals(board.size(), read.size());
+        for (int i = 0; i < board.size(); i++) {
+            AbstractGizmo e = board.get(i), a = read.get(i);
+            String what = "gizmo " + i + " " + e.getClass().getName();
+            assertEquals(e.getClass(), a.getClass(), what);
+            assertEquals(e.x, a.x, what);
+            assertEquals(e.y, a.y, what);
+            assertEquals(e.r, a.r, what);
+            assertEquals(e.degree, a.degree, what);
+            assertEquals(e.isCrashMove(), a.isCrashMove(), what);
+        }
+    }
+
+    @Test
+    public void refusesAFlippedByte() throws IOException {
+        File file = new File(directory, "board." + BinaryBoard.EXTENSION);
+        BinaryBoard.write(file, board());
+        byte[] written = Files.readAllBytes(file.toPath());
+        File damaged = new File(directory, "damaged." + BinaryBoard.EXTENSION);
+        for (int i = CHECKED_HEADER; i < written.length; i++) {
+            byte[] bytes = written.clone();
+            bytes[i] ^= 0x10;
+            Files.write(damaged.toPath(), bytes);
+            IOException e = assertThrows(IOException.class, () -> BinaryBoard.read(damaged, engine), "byte " + i);
+            assertTrue(e.getMessage().contains("checksum"), "byte " + i + ": " + e.getMessage());
+        }
+    }
+
+    private List<AbstractGizmo> board() {
+        List<AbstractGizmo> board = new ArrayList<>();
+        int x = 20;
+        for (int degree = 0; degree < 360; degree += 90) {
+            board.add(new SquareGizmo(x, 20, 10, degree, degree == 0, engine));
+            board.add(new TriangleGizmo(x, 70, 20, degree, degree == 90, engine));
+            board.add(new LTypeGizmo(x, 110, 20, degree, degree == 180, engine));
+            board.add(new AbsorberGizmo(x, 180, 10, degree, false, engine));
+            board.add(new LeftFlipper(x, 210, 20, degree, false, engine));
+            x += 60;
+        }
+        return board;
+    }
+}
@@ -0,0 +1,86 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Overview: checks that BoardReader reads back what FileSolver.write() writes,
+ * gizmo by gizmo, for every kind of gizmo, rotated or not, crash-moving or
+ * not, and that gizmos read while the engine is in track mode are not made
+ * trackers by the reader.
+ */
+public class BoardReaderTest {
+
+    private final SimulationEngine engine = new SimulationEngine();
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void readsBackWhatSaveWrites() throws IOException {
+        List<AbstractGizmo> board = board();
+        StringWriter text = new StringWriter();
+        FileSolver.write(text, board);
+
+        List<AbstractGizmo> read = new ArrayList<>();
+        try (BoardReader reader = new BoardReader(new StringReader(text.toString()))) {
+            while (reader.next()) read.add(reader.create(engine));
+        }
+        assertSameBoard(board, read);
+    }
+
+    @Test
+    public void readsBackASavedFile() throws IOException {
+        List<AbstractGizmo> board = board();
+        File file = new File(directory, "board.gizmo");
+        try (Writer out = new FileWriter(file)) {
+            FileSolver.write(out, board);
+        }
+        engine.setTrackMode(true);
+        List<AbstractGizmo> read = BoardReader.readAll(file, engine);
+        assertSameBoard(board, read);
+        for (AbstractGizmo gizmo : read) assertFalse(gizmo.isTracker(), gizmo.getClass().getName());
+    }
+
+    private List<AbstractGizmo> board() {
+        List<AbstractGizmo> board = new ArrayList<>();
+        int x = 20;
+        for (int degree = 0; degree < 360; degree += 90) {
+            boolean crashMove = degree % 180 == 0;
+            board.add(new SquareGizmo(x, 20, 10, degree, crashMove, engine));
+            board.add(new CircleGizmo(x, 40, 10, degree, !crashMove, engine));
+            board.add(new TriangleGizmo(x, 70, 20, degree, crashMove, engine));
+            board.add(new LTypeGizmo(x, 110, 20, degree, !crashMove, engine));
+            board.add(new TrapezoidGizmo(x, 150, 20, degree, crashMove, engine));
+            board.add(new AbsorberGizmo(x, 180, 10, degree, false, engine));
+            board.add(new LeftFlipper(x, 210, 20, degree, false, engine));
+            board.add(new RightFlipper(x, 250, 20, degree, false, engine));
+            x += 60;
+        }
+        return board;
+    }
+
+    private static void assertSameBoard(List<AbstractGizmo> expected, List<AbstractGizmo> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            AbstractGizmo e = expected.get(i), a = actual.get(i);
+            String what = "gizmo " + i + " " + e.getClass().getName();
+            assertEquals(e.getClass(), a.getClass(), what);
+            assertEquals(e.x, a.x, what);
+            assertEquals(e.y, a.y, what);
+            assertEquals(e.r, a.r, what);
+            assertEquals(e.degree, a.degree, what);
+            assertEquals(e.isCrashMove(), a.isCrashMove(), what);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+import org.junit.jupiter.api.Test;
+import physics.Circle;
+import physics.GeometryImpl;
+import physics.LineSegment;
+import physics.Vect;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Overview: checks FastGeometry against physics.GeometryImpl on seeded random
+ * segments, circles and balls: impact times and reflections agree within
+ * EPSILON, for general positions as well as for balls moving parallel to a
+ * segment, grazing a segment or circle, and already touching one.
+ */
+public class FastGeometryTest {
+
+    private static final long SEED = 20240611L;
+    private static final int CASES = 5000;
+    private static final double EPSILON = 1e-9;
+    private static final double BALL_RADIUS = 6;
+
+    private final GeometryImpl reference = new GeometryImpl();
+    private final FastGeometry fast = new FastGeometry(Double.POSITIVE_INFINITY);
+
+    @Test
+    public void wallCollisionsAgree() {
+        Random random = new Random(SEED);
+        for (int i = 0; i < CASES; i++) {
+            LineSegment line = segment(random);
+            Circle ball = new Circle(coordinate(random), coordinate(random), BALL_RADIUS);
+            assertWallAgrees(line, ball, velocity(random), "general " + i);
+        }
+    }
+
+    @Test
+    public void parallelWallCollisionsAgree() {
+        Random random = new Random(SEED + 1);
+        for (int i = 0; i < CASES; i++) {
+            LineSegment line = segment(random);
+            double ux = line.p2().x() - line.p1().x(), uy = line.p2().y() - line.p1().y();
+            double length = Math.hypot(ux, uy);
+            // on either side of the line, at, inside or beyond a radius from it.
+            double offset = (random.nextInt(3) * 0.5 + 0.5) * BALL_RADIUS * (random.nextBoolean() ? 1 : -1);
+            double along = random.nextDouble() * 2 - 0.5;
+            Circle ball = new Circle(line.p1().x() + along * ux - offset * uy / length,
+                    line.p1().y() + along * uy + offset * ux / length, BALL_RADIUS);
+            double speed = random.nextGaussian() * 100;
+            assertWallAgrees(line, ball, new Vect(speed * ux / length, speed * uy / length), "parallel " + i);
+        }
+    }
+
+    @Test
+    public void grazingAndTouchingWallCollisionsAgree() {
+        Random random = new Random(SEED + 2);
+        for (int i = 0; i < CASES; i++) {
+            LineSegment line = segment(random);
+            double ux = line.p2().x() - line.p1().x(), uy = line.p2().y() - line.p1().y();
+            double length = Math.hypot(ux, uy);
+            double nx = -uy / length, ny = ux / length;
+            // the point of the segment the ball touches, a radius away along the normal.
+            double along = random.nextDouble() * 0.98 + 0.01;
+            double side = random.nextBoolean() ? 1 : -1;
+            double touchX = line.p1().x() + along * ux + side * BALL_RADIUS * nx;
+            double touchY = line.p1().y() + along * uy + side * BALL_RADIUS * ny;
+            Vect velocity = velocity(random);
+            if (random.nextBoolean()) {
+                // already touching, moving in any direction.
+                assertWallAgrees(line, new Circle(touchX, touchY, BALL_RADIUS), velocity, "touching " + i);
+            } else {
+                // coming from some time back, to meet the segment at a glancing angle.
+                double t = random.nextDouble() * 2 + 0.1;
+                double speed = Math.abs(random.nextGaussian() * 100) + 1;
+                double glance = random.nextDouble() * 1e-3;
+                double vx = speed * (ux / length - side * glance * nx);
+                double vy = speed * (uy / length - side * glance * ny);
+                Circle ball = new Circle(touchX - t * vx, touchY - t * vy, BALL_RADIUS);
+                assertWallAgrees(line, ball, new Vect(vx, vy), "grazing " + i);
+            }
+        }
+    }
+
+    @Test
+    public void circleCollisionsAgree() {
+        Random random = new Random(SEED + 3);
+        for (int i = 0; i < CASES; i++) {
+            Circle circle = circle(random);
+            Circle ball = new Circle(coordinate(random), coordinate(random), BALL_RADIUS);
+            assertCircleAgrees(circle, ball, velocity(random), "general " + i);
+        }
+    }
+
+    @Test
+    public void grazingAndTouchingCircleCollisionsAgree() {
+        Random random = new Random(SEED + 4);
+        for (int i = 0; i < CASES; i++) {
+            Circle circle = circle(random);
+            double distance = circle.getRadius() + BALL_RADIUS;
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double nx = Math.cos(angle), ny = Math.sin(angle);
+            double touchX = circle.getCenter().x() + distance * nx;
+            double touchY = circle.getCenter().y() + distance * ny;
+            Vect velocity = velocity(random);
+            if (random.nextBoolean()) {
+                assertCircleAgrees(circle, new Circle(touchX, touchY, BALL_RADIUS), velocity, "touching " + i);
+            } else {
+                // along the tangent at the touching point, slightly toward or away from the circle.
+                double t = random.nextDouble() * 2 + 0.1;
+                double speed = Math.abs(random.nextGaussian() * 100) + 1;
+                double glance = (random.nextDouble() * 2 - 1) * 1e-3;
+                double vx = speed * (-ny - glance * nx);
+                double vy = speed * (nx - glance * ny);
+                Circle ball = new Circle(touchX - t * vx, touchY - t * vy, BALL_RADIUS);
+                assertCircleAgrees(circle, ball, new Vect(vx, vy), "grazing " + i);
+            }
+        }
+    }
+
+    @Test
+    public void wallReflectionsAgree() {
+        Random random = new Random(SEED + 5);
+        for (int i = 0; i < CASES; i++) {
+            LineSegment line = segment(random);
+            Vect velocity;
+            if (i % 4 == 0) {
+                // parallel to the segment, which reflects to itself.
+                double scale = random.nextGaussian();
+                velocity = new Vect(scale * (line.p2().x() - line.p1().x()), scale * (line.p2().y() - line.p1().y()));
+            } else {
+                velocity = velocity(random);
+            }
+            assertVectAgrees(reference.reflectWall(line, velocity), fast.reflectWall(line, velocity),
+                    "reflectWall " + i + " " + line + " " + velocity);
+        }
+    }
+
+    @Test
+    public void circleReflectionsAgree() {
+        Random random = new Random(SEED + 6);
+        for (int i = 0; i < CASES; i++) {
+            Circle circle = circle(random);
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double distance = circle.getRadius() + BALL_RADIUS;
+            Vect ball = new Vect(circle.getCenter().x() + distance * Math.cos(angle),
+                    circle.getCenter().y() + distance * Math.sin(angle));
+            Vect velocity = i % 4 == 0
+                    // along the tangent, which reflects to itself.
+                    ? new Vect(-Math.sin(angle) * random.nextGaussian() * 100, Math.cos(angle) * random.nextGaussian() * 100)
+                    : velocity(random);
+            assertVectAgrees(reference.reflectCircle(circle.getCenter(), ball, velocity),
+                    fast.reflectCircle(circle.getCenter(), ball, velocity),
+                    "reflectCircle " + i + " " + circle + " " + ball + " " + velocity);
+        }
+    }
+
+    @Test
+    public void boundedForesightAgreesWithinIt() {
+        Random random = new Random(SEED + 7);
+        double foresight = 0.5;
+        FastGeometry bounded = new FastGeometry(foresight);
+        for (int i = 0; i < CASES; i++) {
+            LineSegment line = segment(random);
+            Circle circle = circle(random);
+            Circle ball = new Circle(coordinate(random), coordinate(random), BALL_RADIUS);
+            Vect velocity = velocity(random);
+            assertWithin(foresight, reference.timeUntilWallCollision(line, ball, velocity),
+                    bounded.timeUntilWallCollision(line, ball, velocity), "wall " + i);
+            assertWithin(foresight, reference.timeUntilCircleCollision(circle, ball, velocity),
+                    bounded.timeUntilCircleCollision(circle, ball, velocity), "circle " + i);
+        }
+    }
+
+    private void assertWallAgrees(LineSegment line, Circle ball, Vect velocity, String what) {
+        assertTimeAgrees(reference.timeUntilWallCollision(line, ball, velocity),
+                fast.timeUntilWallCollision(line, ball, velocity),
+                what + ": " + line + " " + ball + " " + velocity);
+    }
+
+    private void assertCircleAgrees(Circle circle, Circle ball, Vect velocity, String what) {
+        assertTimeAgrees(reference.timeUntilCircleCollision(circle, ball, velocity),
+                fast.timeUntilCircleCollision(circle, ball, velocity),
+                what + ": " + circle + " " + ball + " " + velocity);
+    }
+
+    private static void assertTimeAgrees(double expected, double actual, String what) {
+        if (expected == Double.POSITIVE_INFINITY) {
+            assertEquals(expected, actual, what);
+        } else {
+            assertEquals(expected, actual, EPSILON * Math.max(1, expected), what);
+        }
+    }
+
+    // beyond the foresight, an impact is reported as never happening.
+    private static void assertWithin(double foresight, double expected, double actual, String what) {
+        if (expected > foresight) {
+            assertEquals(Double.POSITIVE_INFINITY, actual, what);
+        } else {
+            assertTimeAgrees(expected, actual, what);
+        }
+    }
+
+    private static void assertVectAgrees(Vect expected, Vect actual, String what) {
+        double tolerance = EPSILON * Math.max(1, expected.length());
+        assertTrue(Math.abs(expected.x() - actual.x()) <= tolerance
+                && Math.abs(expected.y() - actual.y()) <= tolerance, what + ": " + expected + " " + actual);
+    }
+
+    // a segment of the board, axis-aligned one time in four as gizmo edges mostly are.
+    private static LineSegment segment(Random random) {
+        double x1 = coordinate(random), y1 = coordinate(random);
+        double x2, y2;
+        do {
+            x2 = coordinate(random);
+            y2 = coordinate(random);
+        } while (x1 == x2 && y1 == y2);
+        switch (random.nextInt(8)) {
+            case 0:
+                return new LineSegment(x1, y1, x1, y2);
+            case 1:
+                return new LineSegment(x1, y1, x2, y1);
+            default:
+                return new LineSegment(x1, y1, x2, y2);
+        }
+    }
+
+    // a circle of a gizmo, a corner of radius 0 one time in three.
+    private static Circle circle(Random random) {
+        double radius = random.nextInt(3) == 0 ? 0 : random.nextDouble() * 20;
+        return new Circle(coordinate(random), coordinate(random), radius);
+    }
+
+    private static double coordinate(Random random) {
+        return random.nextDouble() * 400;
+    }
+
+    private static Vect velocity(Random random) {
+        return new Vect(random.nextGaussian() * 100, random.nextGaussian() * 100);
+    }
+}
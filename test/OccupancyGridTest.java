@@ -0,0 +1,123 @@
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Overview: checks the set of free cells an OccupancyGrid maintains against
+ * the cells no bounding box covers, counted from scratch, after every one
+ * of a seeded sequence of insertions, moves and removals of gizmos; and that
+ * SimulationEngine.randomFreeCell() places gizmos reproducibly and reports a
+ * full board.
+ */
+public class OccupancyGridTest {
+
+    private static final long SEED = 20240611L;
+    private static final int OPERATIONS = 500;
+
+    private final int unit = SimulationEngine.getSizePerUnit();
+    private final int width = SimulationEngine.getWindowUnitWidth() * unit;
+    private final int height = SimulationEngine.getWindowUnitHeight() * unit;
+
+    @Test
+    public void freeCellsAreTheCellsNoGizmoCovers() {
+        SimulationEngine engine = new SimulationEngine();
+        OccupancyGrid grid = new OccupancyGrid(width, height, unit);
+        List<AbstractGizmo> gizmos = new ArrayList<>();
+        Random random = new Random(SEED);
+        for (int i = 0; i < OPERATIONS; i++) {
+            int operation = gizmos.isEmpty() ? 0 : random.nextInt(3);
+            if (operation == 0) {
+                AbstractGizmo gizmo = randomGizmo(random, engine);
+                gizmos.add(gizmo);
+                grid.insert(gizmo);
+            } else if (operation == 1) {
+                AbstractGizmo gizmo = gizmos.get(random.nextInt(gizmos.size()));
+                gizmo.setPosition(center(random, gizmo.r, width), center(random, gizmo.r, height));
+                grid.update(gizmo);
+            } else {
+                grid.remove(gizmos.remove(random.nextInt(gizmos.size())));
+            }
+            Set<Integer> expected = uncoveredCells(grid, gizmos);
+            assertEquals(grid.getCellCount() - expected.size(), grid.getCoveredCells(), "after operation " + i);
+            assertEquals(expected, freeCells(grid), "after operation " + i);
+        }
+    }
+
+    @Test
+    public void placesReproduciblyUntilTheBoardIsFull() {
+        SimulationEngine first = new SimulationEngine();
+        SimulationEngine second = new SimulationEngine();
+        first.setPlacementSeed(SEED);
+        second.setPlacementSeed(SEED);
+        int cells = SimulationEngine.getWindowUnitWidth() * SimulationEngine.getWindowUnitHeight();
+        for (int i = 0; i < cells; i++) {
+            Point a = first.randomFreeCell(), b = second.randomFreeCell();
+            assertNotNull(a, "cell " + i);
+            assertEquals(a, b, "cell " + i);
+            first.addGizmo(new SquareGizmo(a.x, a.y, unit / 2, 0, false, first));
+            second.addGizmo(new SquareGizmo(b.x, b.y, unit / 2, 0, false, second));
+        }
+        assertEquals(cells, first.summarizeGizmoSize());
+        assertNull(first.randomFreeCell());
+    }
+
+    private AbstractGizmo randomGizmo(Random random, SimulationEngine engine) {
+        int degree = 90 * random.nextInt(4);
+        switch (random.nextInt(3)) {
+            case 0:
+                return new SquareGizmo(center(random, unit / 2, width), center(random, unit / 2, height),
+                        unit / 2, degree, false, engine);
+            case 1:
+                return new TriangleGizmo(center(random, unit, width), center(random, unit, height),
+                        unit, degree, false, engine);
+            default:
+                return new LTypeGizmo(center(random, unit, width), center(random, unit, height),
+                        unit, degree, false, engine);
+        }
+    }
+
+    // a center, not always on the grid, that keeps a gizmo of radius r on the board.
+    private static int center(Random random, int r, int size) {
+        return r + random.nextInt(size - 2 * r + 1);
+    }
+
+    private Set<Integer> uncoveredCells(OccupancyGrid grid, List<AbstractGizmo> gizmos) {
+        Set<Integer> uncovered = new HashSet<>();
+        int columns = width / unit;
+        for (int cell = 0; cell < grid.getCellCount(); cell++) {
+            Rectangle rect = new Rectangle((cell % columns) * unit, (cell / columns) * unit, unit, unit);
+            boolean covered = false;
+            for (AbstractGizmo gizmo : gizmos) {
+                for (Rectangle box : gizmo.boundingBoxes()) covered |= box.intersects(rect);
+            }
+            if (!covered) uncovered.add(cell);
+        }
+        return uncovered;
+    }
+
+    // every cell randomFreeCell() can draw, by drawing each in turn.
+    private static Set<Integer> freeCells(OccupancyGrid grid) {
+        Set<Integer> free = new HashSet<>();
+        Random enumerating = new Random() {
+            private int next;
+
+            @Override
+            public int nextInt(int bound) {
+                return next++;
+            }
+        };
+        for (int i = grid.getCellCount() - grid.getCoveredCells(); i > 0; i--) {
+            free.add(grid.randomFreeCell(enumerating));
+        }
+        return free;
+    }
+}
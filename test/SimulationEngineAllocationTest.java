@@ -0,0 +1,64 @@
+import org.junit.jupiter.api.Test;
+import physics.Vect;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Overview: checks that once warmed up, a tick of SimulationEngine.step()
+ * allocates nothing, through the collision grid and through the packed
+ * feature store, on presure-test.gizmo with a handful of balls bouncing off
+ * its gizmos and each other.
+ */
+public class SimulationEngineAllocationTest {
+
+    private static final int WARMUP_TICKS = 20000;
+    private static final int TICKS = 20000;
+
+    @Test
+    public void gridTickAllocatesNothing() throws IOException {
+        assertTicksAllocateNothing(false);
+    }
+
+    @Test
+    public void packedTickAllocatesNothing() throws IOException {
+        assertTicksAllocateNothing(true);
+    }
+
+    private static void assertTicksAllocateNothing(boolean packed) throws IOException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "no per-thread allocation counter");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "no per-thread allocation counter");
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        SimulationEngine engine = world(packed);
+        for (int i = 0; i < WARMUP_TICKS; i++) engine.step(40);
+
+        long id = Thread.currentThread().getId();
+        // the first reading can allocate while the counter sets itself up.
+        threads.getThreadAllocatedBytes(id);
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < TICKS; i++) engine.step(40);
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        assertEquals(0, allocated, "bytes allocated by " + TICKS + " ticks");
+    }
+
+    // presure-test.gizmo with balls launched across the top of the board.
+    private static SimulationEngine world(boolean packed) throws IOException {
+        SimulationEngine engine = new BatchRunner(new File("presure-test.gizmo")).newWorld();
+        engine.setPackedFeatures(packed);
+        Random random = new Random(3);
+        engine.getBall().setVelocity(35, 20);
+        for (int i = 0; i < 8; i++) {
+            engine.addBall(20 + 45 * i, 10, new Vect(random.nextInt(60) - 30, random.nextInt(30)));
+        }
+        engine.compileBoard();
+        return engine;
+    }
+}
@@ -0,0 +1,71 @@
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Overview: checks that a gizmo drawn from a SpriteCache has the same pixels
+ * as the gizmo painting itself, for every kind of gizmo the cache rasterizes,
+ * rotated or not, with or without a color of its own.
+ */
+public class SpriteCacheTest {
+
+    private static final int SIZE = 120;
+    private static final Color FOREGROUND = Color.DARK_GRAY;
+
+    private final SimulationEngine engine = new SimulationEngine();
+
+    @Test
+    public void spritesMatchDirectPainting() {
+        for (int degree = 0; degree < 360; degree += 90) {
+            assertSameAsPainting(new SquareGizmo(50, 50, 10, degree, false, engine));
+            assertSameAsPainting(new CircleGizmo(50, 50, 10, degree, false, engine));
+            assertSameAsPainting(new TriangleGizmo(50, 50, 20, degree, false, engine));
+            assertSameAsPainting(new LTypeGizmo(50, 50, 20, degree, false, engine));
+            assertSameAsPainting(new TrapezoidGizmo(50, 50, 20, degree, false, engine));
+            assertSameAsPainting(new AbsorberGizmo(50, 50, 10, degree, false, engine));
+        }
+    }
+
+    @Test
+    public void gizmoWithoutColorTakesTheColorOfTheGraphics() {
+        TriangleGizmo triangle = new TriangleGizmo(50, 50, 20, 90, false, engine);
+        triangle.color = null;
+        assertSameAsPainting(triangle);
+    }
+
+    @Test
+    public void loadedTrianglesHaveTheirColor() {
+        assertEquals(Color.BLUE, new TriangleGizmo(50, 50, 20, 0, false, engine).color);
+    }
+
+    private static void assertSameAsPainting(AbstractGizmo gizmo) {
+        BufferedImage painted = canvas();
+        Graphics2D direct = painted.createGraphics();
+        direct.setColor(FOREGROUND);
+        gizmo.paint(direct);
+        direct.dispose();
+
+        BufferedImage drawn = canvas();
+        Graphics2D cached = drawn.createGraphics();
+        cached.setColor(FOREGROUND);
+        SpriteCache sprites = new SpriteCache(4);
+        // the second time is drawn from the sprite rasterized the first time.
+        sprites.paint(gizmo, cached, 1.0);
+        sprites.paint(gizmo, cached, 1.0);
+        cached.dispose();
+
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                assertEquals(painted.getRGB(x, y), drawn.getRGB(x, y), gizmo.getClass().getName()
+                        + " at " + gizmo.degree + " degrees, pixel (" + x + "," + y + ")");
+            }
+        }
+    }
+
+    private static BufferedImage canvas() {
+        return new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+    }
+}
@@ -0,0 +1,125 @@
+import org.junit.jupiter.api.Test;
+import physics.LineSegment;
+import physics.Vect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Overview: checks StaticGeometry.compile() on a cluster of adjacent squares:
+ * the outline of the cluster is kept, owned by the gizmo each part came
+ * from, the edges between two squares are dropped, and there are fewer
+ * features than before; and a ball bounces off a compiled board as it does
+ * off the same board uncompiled.
+ */
+public class StaticGeometryTest {
+
+    private static final double EPSILON = 1e-6;
+    private static final int SAMPLES = 8;
+
+    @Test
+    public void keepsTheOutlineAndDropsSharedEdges() {
+        SimulationEngine engine = new SimulationEngine();
+        List<AbstractGizmo> cluster = cluster(engine);
+        List<CollisionInfo> compiled = StaticGeometry.compile(cluster);
+
+        int features = 0;
+        for (AbstractGizmo gizmo : cluster) features += gizmo.getLines().size() + gizmo.getCorners().size();
+        assertTrue(compiled.size() < features, compiled.size() + " features from " + features);
+
+        for (AbstractGizmo gizmo : cluster) {
+            for (LineSegment line : gizmo.getLines()) {
+                for (int s = 1; s < SAMPLES; s++) {
+                    double t = (double) s / SAMPLES;
+                    double x = line.p1().x() + t * (line.p2().x() - line.p1().x());
+                    double y = line.p1().y() + t * (line.p2().y() - line.p1().y());
+                    CollisionInfo covering = segmentThrough(compiled, x, y);
+                    if (coveredTwice(cluster, x, y)) {
+                        assertNull(covering, "shared edge at (" + x + "," + y + ")");
+                    } else {
+                        assertNotNull(covering, "outline at (" + x + "," + y + ")");
+                        assertEquals(gizmo, covering.getGizmoAt(x, y), "owner at (" + x + "," + y + ")");
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void ballsBounceAsOffTheUncompiledBoard() {
+        SimulationEngine plain = world();
+        SimulationEngine compiled = world();
+        compiled.compileBoard();
+        assertTrue(compiled.getCompiledFeatures().size() > 0);
+        for (int tick = 0; tick < 200; tick++) {
+            plain.step(40);
+            compiled.step(40);
+            for (int i = 0; i < plain.getBalls().size(); i++) {
+                BouncingBall a = plain.getBalls().get(i), b = compiled.getBalls().get(i);
+                String what = "ball " + i + " at tick " + tick;
+                assertEquals(a.getX(), b.getX(), EPSILON, what);
+                assertEquals(a.getY(), b.getY(), EPSILON, what);
+                assertEquals(a.getVx(), b.getVx(), EPSILON, what);
+                assertEquals(a.getVy(), b.getVy(), EPSILON, what);
+            }
+        }
+    }
+
+    // a 3x2 block of 1x1 squares and a row of four more under it, apart.
+    private static List<AbstractGizmo> cluster(SimulationEngine engine) {
+        int unit = SimulationEngine.getSizePerUnit();
+        List<AbstractGizmo> cluster = new ArrayList<>();
+        for (int column = 0; column < 3; column++) {
+            for (int row = 0; row < 2; row++) {
+                cluster.add(new SquareGizmo((6 + column) * unit + unit / 2, (8 + row) * unit + unit / 2,
+                        unit / 2, 0, false, engine));
+            }
+        }
+        for (int column = 0; column < 4; column++) {
+            cluster.add(new SquareGizmo((4 + column) * unit + unit / 2, 14 * unit + unit / 2,
+                    unit / 2, 0, false, engine));
+        }
+        return cluster;
+    }
+
+    private static SimulationEngine world() {
+        SimulationEngine engine = new SimulationEngine();
+        for (AbstractGizmo gizmo : cluster(engine)) engine.addGizmo(gizmo);
+        int unit = SimulationEngine.getSizePerUnit();
+        engine.getBall().setPosition(7 * unit, 2 * unit);
+        engine.getBall().setVelocity(15, 140);
+        engine.addBall(5 * unit, 11 * unit, new Vect(60, 90));
+        engine.addBall(14 * unit, 5 * unit, new Vect(-120, 40));
+        return engine;
+    }
+
+    private static CollisionInfo segmentThrough(List<CollisionInfo> features, double x, double y) {
+        for (CollisionInfo feature : features) {
+            LineSegment line = feature.getLineSegment();
+            if (line != null && distance(line, x, y) < EPSILON) return feature;
+        }
+        return null;
+    }
+
+    private static boolean coveredTwice(List<AbstractGizmo> gizmos, double x, double y) {
+        int count = 0;
+        for (AbstractGizmo gizmo : gizmos) {
+            for (LineSegment line : gizmo.getLines()) {
+                if (distance(line, x, y) < EPSILON) count++;
+            }
+        }
+        return count > 1;
+    }
+
+    private static double distance(LineSegment line, double x, double y) {
+        double ax = line.p1().x(), ay = line.p1().y();
+        double dx = line.p2().x() - ax, dy = line.p2().y() - ay;
+        double t = Math.max(0, Math.min(1, ((x - ax) * dx + (y - ay) * dy) / (dx * dx + dy * dy)));
+        return Math.hypot(ax + t * dx - x, ay + t * dy - y);
+    }
+}
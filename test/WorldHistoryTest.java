@@ -0,0 +1,105 @@
+import org.junit.jupiter.api.Test;
+import physics.Vect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Overview: checks that rewinding a WorldHistory puts the balls, crash-move
+ * gizmos and flippers of an engine back exactly where they were at that
+ * tick, and that the run goes on from there as it did the first time, also
+ * after the ring buffer has wrapped around.
+ */
+public class WorldHistoryTest {
+
+    private static final double TICK_MILLIS = 40;
+    private static final int CAPACITY = 16;
+    private static final int TICKS = 40;
+    private static final int AGE = 10;
+
+    @Test
+    public void rewindRestoresTheFrameAndTheRunGoesOnAsBefore() {
+        SimulationEngine engine = world();
+        WorldHistory history = new WorldHistory(CAPACITY);
+        engine.setHistory(history);
+        List<double[]> states = new ArrayList<>();
+        List<Long> ticks = new ArrayList<>();
+        for (int tick = 0; tick < TICKS; tick++) {
+            if (tick == 5) engine.setFlipped(true);
+            if (tick == 25) engine.setFlipped(false);
+            engine.step(TICK_MILLIS);
+            states.add(state(engine));
+            ticks.add(engine.getTickCount());
+        }
+        assertEquals(CAPACITY, history.getSize());
+
+        int back = TICKS - 1 - AGE;
+        assertEquals((long) ticks.get(back), history.getTick(AGE));
+        history.rewind(engine, AGE);
+        assertEquals(CAPACITY - AGE, history.getSize());
+        assertArrayEquals(states.get(back), state(engine), "rewound " + AGE + " ticks back");
+
+        for (int tick = back + 1; tick < TICKS; tick++) {
+            if (tick == 25) engine.setFlipped(false);
+            engine.step(TICK_MILLIS);
+            assertArrayEquals(states.get(tick), state(engine), "tick " + tick + " after the rewind");
+        }
+    }
+
+    @Test
+    public void restoreKeepsEveryFrame() {
+        SimulationEngine engine = world();
+        WorldHistory history = new WorldHistory(CAPACITY);
+        engine.setHistory(history);
+        List<double[]> states = new ArrayList<>();
+        for (int tick = 0; tick < CAPACITY; tick++) {
+            engine.step(TICK_MILLIS);
+            states.add(state(engine));
+        }
+        for (int age = CAPACITY - 1; age >= 0; age--) {
+            history.restore(engine, age);
+            assertArrayEquals(states.get(CAPACITY - 1 - age), state(engine), "restored " + age + " ticks back");
+        }
+        assertEquals(CAPACITY, history.getSize());
+    }
+
+    // balls bouncing off a crash-move square and two flippers.
+    private static SimulationEngine world() {
+        SimulationEngine engine = new SimulationEngine();
+        int unit = SimulationEngine.getSizePerUnit();
+        engine.addGizmo(new SquareGizmo(6 * unit + unit / 2, 6 * unit + unit / 2, unit / 2, 0, true, engine));
+        engine.addGizmo(new CircleGizmo(12 * unit + unit / 2, 9 * unit + unit / 2, unit / 2, 0, false, engine));
+        engine.addGizmo(new LeftFlipper(5 * unit, 16 * unit, unit, 0, false, engine));
+        engine.addGizmo(new RightFlipper(12 * unit, 16 * unit, unit, 0, false, engine));
+        engine.getBall().setPosition(6 * unit + unit / 2, 2 * unit);
+        engine.getBall().setVelocity(0, 120);
+        engine.addBall(5 * unit + unit / 2, 12 * unit, new Vect(20, 150));
+        engine.addBall(12 * unit + unit / 2, 12 * unit, new Vect(-30, 160));
+        return engine;
+    }
+
+    private static double[] state(SimulationEngine engine) {
+        List<Double> values = new ArrayList<>();
+        for (BouncingBall ball : engine.getBalls()) {
+            values.add(ball.getX());
+            values.add(ball.getY());
+            values.add(ball.getVx());
+            values.add(ball.getVy());
+            values.add(ball.isInPlay() ? 1.0 : 0.0);
+        }
+        for (AbstractGizmo gizmo : engine.getGizmoList()) {
+            values.add((double) gizmo.x);
+            values.add((double) gizmo.y);
+        }
+        for (Flipper flipper : engine.getFlipperList()) {
+            values.add(flipper.getTurn());
+            values.add(flipper.isFlipped() ? 1.0 : 0.0);
+        }
+        double[] state = new double[values.size()];
+        for (int i = 0; i < state.length; i++) state[i] = values.get(i);
+        return state;
+    }
+}